@@ -49,6 +49,25 @@ public class ClientController {
     public void newGame() {
         CompletableFuture.runAsync(() -> serverConnection.newGame());
     }
+    /**
+     * Play timed games, starting with the next game
+     * @param limits    'guess seconds,round seconds', or null to stop playing timed games
+     */
+    public void setTimed(String limits) {
+        CompletableFuture.runAsync(() -> serverConnection.setTimed(limits));
+    }
+    /**
+     * Join the next tournament
+     */
+    public void joinTournament() {
+        CompletableFuture.runAsync(() -> serverConnection.joinTournament());
+    }
+    /**
+     * Wait for an opponent of a similar score
+     */
+    public void findMatch() {
+        CompletableFuture.runAsync(() -> serverConnection.findMatch());
+    }
     /**
      * Send a guess to the server
      * @param command 
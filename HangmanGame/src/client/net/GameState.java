@@ -0,0 +1,73 @@
+package client.net;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import common.Constants;
+/**
+ *  Mirror of the game state kept by the server, as received in its latest 'STATE' message.
+ * Guesses the server would reject for the mirrored state are answered locally with the
+ * same response the server would give, without a round trip. The mirror is only current
+ * until the next command is sent, the connection drops it until the server answers.
+ */
+class GameState {
+
+    private final boolean playing;
+    private final boolean awaitingConfirmation;
+    private final String hiddenWord;
+    private final Set<String> guesses;
+
+    private GameState(boolean playing, boolean awaitingConfirmation, String hiddenWord, Set<String> guesses) {
+        this.playing = playing;
+        this.awaitingConfirmation = awaitingConfirmation;
+        this.hiddenWord = hiddenWord;
+        this.guesses = guesses;
+    }
+    /**
+     * Parses the body of a 'STATE' message
+     * @param body  'playing;awaiting confirmation;hidden word;tries;guess,guess'
+     * @return      the parsed state
+     * @throws IllegalArgumentException if the body is not a valid state
+     */
+    static GameState parse(String body) {
+        String[] fields = body.split(Constants.STATE_DELIMETER, -1);
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("Invalid state: " + body);
+        }
+        Set<String> guesses = new HashSet<>();
+        if (!fields[4].isEmpty()) {
+            guesses.addAll(Arrays.asList(fields[4].split(",")));
+        }
+        return new GameState(fields[0].equals("1"), fields[1].equals("1"), fields[2], guesses);
+    }
+    /**
+     * Checks a guess against the mirrored state, in the same order as the server
+     * @param guess the guess the user is about to send
+     * @return      the response the server would give if it rejects the guess,
+     *              or null if the guess has to be sent to the server
+     */
+    String reject(String guess) {
+        if (awaitingConfirmation) {
+            return null;                    // a pending question is answered by the guess, leave it to the server
+        }
+        if (guess == null || guess.isEmpty() || guess.contains(Constants.DELIMETER)) {
+            return null;                    // parsed differently by the server, leave it to the server
+        }
+        if (!playing) {
+            return Constants.NOT_PLAYING;
+        }
+        guess = guess.toLowerCase();
+        for (char c : guess.toCharArray()) {
+            if (!Character.isLetter(c)) {
+                return Constants.INCORRECT_FORMAT;
+            }
+        }
+        if (guesses.contains(guess)) {
+            return Constants.ALREADY_GUESSED;
+        }
+        if (guess.length() != 1 && guess.length() != hiddenWord.length()) {
+            return Constants.INVALID_GUESS;
+        }
+        return null;
+    }
+}
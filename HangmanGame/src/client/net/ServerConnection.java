@@ -1,61 +1,149 @@
 package client.net;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import common.Constants;
 import common.ServerMessageTypes;
+import common.UnixSockets;
 
 /**
  * Class responsible for handling a server connection for a client
+ * A connection may also carry many sessions of its own, each opened with 'openStream' and
+ * played like a connection of its own, which lets a gateway play the games of many users
+ * without opening a connection per user.
  * @author Perttu Jääskeläinen
  */
 public class ServerConnection {
     private static final int TIMEOUT_USER_SOCKET = 1800000;   // User socket timeout time
     private static final int TIMEOUT_SERVER_SOCKET = 30000;   // Timeout for server socket
-    private Socket socket;
+    private Closeable socket;               // a 'Socket', or the 'SocketChannel' of a unix domain socket
     private PrintWriter toServer;
     private BufferedReader fromServer;
     private volatile boolean connected;
-    
+    private volatile String sessionToken;  // given by the server, used to resume the game after a server restart
+    private volatile GameState state;      // latest state of the game sent by the server, null until received and while a command is unanswered
+    private ResponseHandler handler;
+    private Listener listener;
+    private final ServerConnection carrier;     // the connection carrying this stream, null for a connection of its own
+    private final int stream;                   // the number of this stream on the carrier
+    private final Map<Integer, ServerConnection> streams = new ConcurrentHashMap<>();
+    private final AtomicInteger nextStream = new AtomicInteger();
+
+    public ServerConnection() {
+        this(null, -1);
+    }
+    private ServerConnection(ServerConnection carrier, int stream) {
+        this.carrier = carrier;
+        this.stream = stream;
+    }
     /**
      * Method for connecting the user to a specified host and port
-     * @param host  the IP-number of the server
+     * @param host  the IP-number of the server, or 'unix:' followed by the socket file of a server
+     * on the same host, in which case the port is not used
+     * If the server has given this connection a session token before, the game is resumed.
+     * The connection then subscribes to the state of the game, which is mirrored locally.
      * @param port  the portnumber of the server
      * @param serverResponseHandler ResponseHandler which is passed to a listener, which handles callbacks
      * @throws IOException if connecting the socket to the defined host and port fails
      */
     public void connect(String host, int port, ResponseHandler serverResponseHandler) throws IOException {
-        socket = new Socket();
-        socket.connect(new InetSocketAddress(host, port), TIMEOUT_SERVER_SOCKET);
-        socket.setSoTimeout(TIMEOUT_USER_SOCKET);
+        InputStream in;
+        OutputStream out;
+        if (host.startsWith(UnixSockets.PREFIX)) {
+            SocketChannel channel = UnixSockets.connect(Paths.get(host.substring(UnixSockets.PREFIX.length())));
+            socket = channel;
+            in = UnixSockets.in(channel);
+            out = UnixSockets.out(channel);
+        } else {
+            Socket tcp = new Socket();
+            tcp.connect(new InetSocketAddress(host, port), TIMEOUT_SERVER_SOCKET);
+            tcp.setSoTimeout(TIMEOUT_USER_SOCKET);
+            socket = tcp;
+            in = tcp.getInputStream();
+            out = tcp.getOutputStream();
+        }
         connected = true;
         boolean autoFlush = true;
-        toServer = new PrintWriter(socket.getOutputStream(), autoFlush);
-        fromServer = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        new Thread(new Listener(serverResponseHandler)).start();
+        toServer = new PrintWriter(out, autoFlush);
+        fromServer = new BufferedReader(new InputStreamReader(in));
+        handler = serverResponseHandler;
+        state = null;
+        listener = new Listener(serverResponseHandler);
+        new Thread(listener).start();
+        if (sessionToken != null) {
+            sendCommand(ServerMessageTypes.RESUME + Constants.DELIMETER + sessionToken);
+        }
+        sendCommand(ServerMessageTypes.STATE.toString());
+    }
+    /**
+     * Opens a stream over this connection, a session of its own that is played like a connection
+     * of its own without connecting it. The server tells the stream its session token once it is
+     * opened, and the stream subscribes to the state of its game.
+     * Lines of the stream are framed as 'STREAM##stream number##line' in both directions.
+     * @param streamResponseHandler ResponseHandler which handles the callbacks of the stream
+     * @return  the stream, closed by calling its 'disconnect'
+     * @throws IOException if this connection is not connected, or is a stream itself
+     */
+    public ServerConnection openStream(ResponseHandler streamResponseHandler) throws IOException {
+        if (!connected || carrier != null) {
+            throw new IOException("Streams can only be opened over a connected server connection");
+        }
+        ServerConnection opened = new ServerConnection(this, nextStream.getAndIncrement());
+        opened.handler = streamResponseHandler;
+        opened.listener = opened.new Listener(streamResponseHandler);
+        opened.connected = true;
+        streams.put(opened.stream, opened);
+        opened.sendCommand(ServerMessageTypes.STATE.toString());
+        return opened;
     }
     /**
-     * Disconnect from the server, initiated by the user.
+     * Disconnect from the server, initiated by the user. A stream only closes itself, a connection
+     * carrying streams closes them all.
      * @throws IOException If the socket.close() method fails
      */
     public void disconnect() throws IOException {
         sendCommand(ServerMessageTypes.DISCONNECT.toString());
+        connected = false;
+        if (carrier != null) {
+            carrier.streams.remove(stream);
+            return;
+        }
+        for (ServerConnection opened : streams.values()) {
+            opened.connected = false;
+        }
+        streams.clear();
         socket.close();
         socket = null;
-        connected = false;
     }
     /**
      * Structures the guess into the proper format before sending to the server
      * Example:
      *  'A'
      * is structured into 'GUESS##A', where '##' is the (example) message delimeter
+     * Guesses the server would reject for the mirrored game state are answered
+     * locally instead, without being sent, once the server has sent the state
+     * following the last command.
      * @param guess the letter or word to be guessed and calculated by the server
      */
     public void sendGuess(String guess) {
+        GameState current = state;
+        String rejection = current == null ? null : current.reject(guess);
+        if (rejection != null) {
+            handler.handleMsg(rejection);
+            return;
+        }
         sendCommand(ServerMessageTypes.GUESS + Constants.DELIMETER + guess);
     }
     /**
@@ -65,16 +153,56 @@ public class ServerConnection {
     public void newGame() {
         sendCommand(ServerMessageTypes.NEWWORD.toString());
     }
+    /**
+     * Structures a 'TIMED' command, setting the time limits of the following games
+     * @param limits    'guess seconds,round seconds', or null to stop playing timed games
+     */
+    public void setTimed(String limits) {
+        if (limits == null) {
+            sendCommand(ServerMessageTypes.TIMED.toString());
+        } else {
+            sendCommand(ServerMessageTypes.TIMED + Constants.DELIMETER + limits);
+        }
+    }
+    /**
+     * Structures a 'TOURNAMENT' command, joining the next tournament
+     */
+    public void joinTournament() {
+        sendCommand(ServerMessageTypes.TOURNAMENT.toString());
+    }
+    /**
+     * Structures a 'MATCH' command, waiting for an opponent of a similar score
+     */
+    public void findMatch() {
+        sendCommand(ServerMessageTypes.MATCH.toString());
+    }
     /**
      * Send a structured command to the server, which includes a type 'ServerMessageTypes' for the server, 
      * followed by a message delimeter defined in constants and the body of the ServerMessageType command.
      * Example: 'GUESS##A' 
      * For type 'GUESS' for the letter 'A', split by the (exampe) delimeter '##'
+     * The mirrored game state is dropped until the server sends the state following the
+     * command, as the command may change it.
      * @param command the structured command to be sent to the server
      */
     private void sendCommand(String command) {
+        if (!connected) {
+            return;
+        }
+        state = null;
+        if (carrier != null) {
+            carrier.sendLine(ServerMessageTypes.STREAM + Constants.DELIMETER + stream + Constants.DELIMETER + command);
+        } else {
+            sendLine(command);
+        }
+    }
+    /**
+     * Writes a line to the server over the socket of this connection
+     * @param line  the command, or the framed command of a stream
+     */
+    private void sendLine(String line) {
         if (connected) {
-            toServer.println(command);
+            toServer.println(line);
         }
     }
     /**
@@ -95,13 +223,81 @@ public class ServerConnection {
         public void run() {
             try {
                 for (;;) {
-                    handler.handleMsg(formatMsg(fromServer.readLine()));
+                    received(fromServer.readLine());
                 }
             } catch (Throwable connectionFailure) {
-                if (connected) {
-                    handler.handleMsg("Lost connection.");
+                lost();
+            }
+        }
+        /**
+         * Handles a message from the server, the messages of streams are handled by the listener of the stream
+         * @param msg   the original format message from the server
+         */
+        private void received(String msg) {
+            if (!routeStream(msg) && !saveSession(msg) && !saveState(msg)) {
+                handler.handleMsg(formatMsg(msg));
+            }
+        }
+        /**
+         * Notifies the user, and the users of every stream, that the connection was lost
+         */
+        private void lost() {
+            if (connected) {
+                handler.handleMsg("Lost connection.");
+            }
+            for (ServerConnection opened : streams.values()) {
+                opened.listener.lost();
+            }
+        }
+        /**
+         * Hands the message without its frame to the stream it belongs to if the message
+         * is a 'STREAM' message, messages of closed streams are dropped
+         * @param entireMsg the original format message from the server
+         * @return  true if the message was a 'STREAM' message
+         */
+        private boolean routeStream(String entireMsg) {
+            String prefix = ServerMessageTypes.STREAM + Constants.DELIMETER;
+            if (!entireMsg.startsWith(prefix)) {
+                return false;
+            }
+            int delimeter = entireMsg.indexOf(Constants.DELIMETER, prefix.length());
+            ServerConnection opened = streams.get(Integer.parseInt(entireMsg.substring(prefix.length(), delimeter)));
+            if (opened != null) {
+                opened.listener.received(entireMsg.substring(delimeter + Constants.DELIMETER.length()));
+            }
+            return true;
+        }
+        /**
+         * Saves the session token if the message is a 'SESSION' message, these
+         * are not shown to the user
+         * @param entireMsg the original format message from the server
+         * @return  true if the message was a 'SESSION' message
+         */
+        private boolean saveSession(String entireMsg) {
+            String prefix = ServerMessageTypes.SESSION + Constants.DELIMETER;
+            if (entireMsg.startsWith(prefix)) {
+                sessionToken = entireMsg.substring(prefix.length());
+                return true;
+            }
+            return false;
+        }
+        /**
+         * Mirrors the game state if the message is a 'STATE' message, these
+         * are not shown to the user
+         * @param entireMsg the original format message from the server
+         * @return  true if the message was a 'STATE' message
+         */
+        private boolean saveState(String entireMsg) {
+            String prefix = ServerMessageTypes.STATE + Constants.DELIMETER;
+            if (entireMsg.startsWith(prefix)) {
+                try {
+                    state = GameState.parse(entireMsg.substring(prefix.length()));
+                } catch (IllegalArgumentException e) {
+                    state = null;
                 }
+                return true;
             }
+            return false;
         }
         /**
          * Extracts the message received (without type)
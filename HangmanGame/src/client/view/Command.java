@@ -9,7 +9,8 @@ public enum Command {
      * Connect to the server, first param is the IP and the second is the port number
      */
     CONNECT("Connect to the server. "
-            + "USAGE: 'CONNECT <IP> <PORT>' for specified IP & Port OR 'CONNECT', which will use the default IP and Port"),
+            + "USAGE: 'CONNECT <IP> <PORT>' for specified IP & Port, 'CONNECT unix:<FILE>' for the unix domain socket "
+            + "of a server on this host OR 'CONNECT', which will use the default IP and Port"),
     /**
      * Specified when the user wants to make a guess for a letter or the entire word
      */
@@ -20,6 +21,21 @@ public enum Command {
      */
     NEWWORD("Start the game/request new word from server. " 
             + "USAGE: 'NEWWORD')"),
+    /**
+     * Specified to play timed games, with a time limit for every guess and every round
+     */
+    TIMED("Play timed games, starting with the next game. "
+            + "USAGE: 'TIMED <GUESS SECONDS>,<ROUND SECONDS>' where 0 is no limit OR 'TIMED' to stop playing timed games"),
+    /**
+     * Specified to join the next tournament
+     */
+    TOURNAMENT("Join the next tournament, where every player guesses the same word. "
+            + "USAGE: 'TOURNAMENT'"),
+    /**
+     * Specified to play a head-to-head game against a player of a similar score
+     */
+    MATCH("Play against a player with a similar score, the first to complete the shared word wins. "
+            + "USAGE: 'MATCH'"),
     /**
      * Quit the chat application.
      */
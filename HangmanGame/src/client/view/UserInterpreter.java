@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.util.Scanner;
 import client.controller.ClientController;
 import client.net.ResponseHandler;
+import common.UnixSockets;
 
 /**
  * Class for handling all userside communication when playing
@@ -67,12 +68,16 @@ public class UserInterpreter implements Runnable {
     }
     /**
      * Connects a user to the specified IP and portnumber. If no port/IP is specified,
-     * uses the default values
+     * uses the default values. A server on the same host may be connected to by the
+     * file of its unix domain socket, as 'unix:/path/to/socket', without a port
      * @param IPport    the message from the user, which should include the IP and portnumber
      */
     private void connect(String IPport) {
         String[] s = IPport.split(" ");
-        if (s.length <= max(PORT_INDEX, IP_INDEX)) {
+        if (s.length > IP_INDEX && s[IP_INDEX].startsWith(UnixSockets.PREFIX)) {
+            ip = s[IP_INDEX];
+            safePrinter.println("Using specified unix domain socket: " + ip);
+        } else if (s.length <= max(PORT_INDEX, IP_INDEX)) {
             safePrinter.println("Incorrect format when specifying IP and port, using default values for IP: " + ip + ", PORT: " + port);
         } else {
             try {
@@ -143,6 +148,27 @@ public class UserInterpreter implements Runnable {
                             notConnected();
                         }
                         break;
+                    case TIMED:
+                        if (connected) {
+                            contr.setTimed(line.getBody());
+                        } else {
+                            notConnected();
+                        }
+                        break;
+                    case TOURNAMENT:
+                        if (connected) {
+                            contr.joinTournament();
+                        } else {
+                            notConnected();
+                        }
+                        break;
+                    case MATCH:
+                        if (connected) {
+                            contr.findMatch();
+                        } else {
+                            notConnected();
+                        }
+                        break;
                     case HELP:
                         safePrinter.println(usageMessage(""));
                         break;
@@ -17,4 +17,28 @@ public class Constants {
      * The message body is specified in the second index
      */
     public static final int MESSAGE_INDEX = 1;
+    /**
+     * Seperates the fields of a 'STATE' message body
+     */
+    public static final String STATE_DELIMETER = ";";
+    /**
+     * Response to a guess when no game is being played
+     */
+    public static final String NOT_PLAYING = "Currently not playing. Write 'NEWWORD' to start a new game";
+    /**
+     * Response to a guess that contains anything but letters
+     */
+    public static final String INCORRECT_FORMAT = "Incorrect format, please only use letters when guessing";
+    /**
+     * Response to a guess that has already been made in the current game
+     */
+    public static final String ALREADY_GUESSED = "You already made the same guess, try a new letter or word!";
+    /**
+     * Response to a guess that is neither a letter nor as long as the word
+     */
+    public static final String INVALID_GUESS = "Invalid guess, either guess a letter or the entire word";
+    /**
+     * Response to a guess without a body
+     */
+    public static final String MISSING_BODY = "error when parsing msg body, please try again";
 }
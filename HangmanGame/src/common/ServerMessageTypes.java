@@ -21,5 +21,36 @@ public enum ServerMessageTypes {
     /**
      * Entered to disconnect the client
      */
-    DISCONNECT;
+    DISCONNECT,
+    /**
+     * Sent by the server with the token used to resume the session after a server restart
+     */
+    SESSION,
+    /**
+     * Sent by a reconnecting client with its session token, to resume its game after a server restart
+     */
+    RESUME,
+    /**
+     * Sent by a client to subscribe to the state of its game. The server then sends the state
+     * whenever it changes: 'STATE##playing;awaiting confirmation;hidden word;tries;guess,guess'
+     * where the flags are 1 or 0
+     */
+    STATE,
+    /**
+     * Sent by a client to play timed games: 'TIMED##guess seconds,round seconds', 0 for no limit
+     */
+    TIMED,
+    /**
+     * Sent by a client to join the next scheduled tournament
+     */
+    TOURNAMENT,
+    /**
+     * Sent by a client to be matched with a player of a similar score, both guessing the same word
+     */
+    MATCH,
+    /**
+     * Frames a line of one of the sessions carried by a single connection, in both directions:
+     * 'STREAM##stream number##line', for example 'STREAM##7##GUESS##a'
+     */
+    STREAM;
 }
@@ -0,0 +1,143 @@
+package common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+/**
+ *  Unix domain sockets carrying the same line protocol as TCP sockets, for clients running
+ * on the same host as the server. Connections skip the loopback TCP stack, and who may connect
+ * is decided by the permissions of the socket file. Requires a JDK 16 or later at runtime.
+ * The JDK 16 API is looked up reflectively, so the tree still builds with a JDK 8 toolchain,
+ * on older runtimes opening a socket fails with an 'IOException'.
+ *
+ * A unix domain 'SocketChannel' has no 'Socket', so its streams are made here. The streams of
+ * 'Channels' share one lock for reading and writing until JDK 19, which would block a writer
+ * while a reader waits for a line, these streams read and write the channel directly.
+ */
+public class UnixSockets {
+
+    /**
+     * Prefix of an address naming a socket file rather than a host, as in 'unix:/tmp/hangman.sock'
+     */
+    public static final String PREFIX = "unix:";
+
+    private UnixSockets() {
+    }
+    /**
+     * Binds a listening channel to a socket file, replacing the file left by a server that was not shut down
+     * @param path  the socket file
+     * @return      the bound channel, accepting blocking channels
+     * @throws IOException  if the file can not be replaced or bound
+     */
+    public static ServerSocketChannel listen(Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        Files.deleteIfExists(path);
+        ServerSocketChannel server = (ServerSocketChannel) invoke(ServerSocketChannel.class, "open",
+                ProtocolFamily.class, unixFamily());
+        server.bind(address(path));
+        return server;
+    }
+    /**
+     * Connects to a server listening on a socket file
+     * @param path  the socket file
+     * @return      the connected, blocking channel
+     * @throws IOException  if no server listens on the file
+     */
+    public static SocketChannel connect(Path path) throws IOException {
+        return SocketChannel.open(address(path));
+    }
+    /**
+     * @return  'StandardProtocolFamily.UNIX', added in JDK 16
+     */
+    private static ProtocolFamily unixFamily() throws IOException {
+        try {
+            return StandardProtocolFamily.valueOf("UNIX");
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unix domain sockets require JDK 16 or later", e);
+        }
+    }
+    /**
+     * @return  'UnixDomainSocketAddress.of(path)', added in JDK 16
+     */
+    private static SocketAddress address(Path path) throws IOException {
+        try {
+            return (SocketAddress) invoke(Class.forName("java.net.UnixDomainSocketAddress"), "of", Path.class, path);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unix domain sockets require JDK 16 or later", e);
+        }
+    }
+    /**
+     * Calls a static method taking one argument, rethrowing what the method throws
+     */
+    private static Object invoke(Class<?> type, String name, Class<?> parameter, Object argument) throws IOException {
+        try {
+            return type.getMethod(name, parameter).invoke(null, argument);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Unix domain sockets require JDK 16 or later", e);
+        }
+    }
+    /**
+     * @param channel   a blocking channel
+     * @return          a stream reading from the channel, -1 once the other end shut down its output
+     */
+    public static InputStream in(SocketChannel channel) {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+            }
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return len == 0 ? 0 : channel.read(ByteBuffer.wrap(b, off, len));
+            }
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+    /**
+     * @param channel   a blocking channel
+     * @return          a stream writing to the channel, every write is written in full
+     */
+    public static OutputStream out(SocketChannel channel) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+}
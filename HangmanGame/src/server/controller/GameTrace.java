@@ -0,0 +1,102 @@
+package server.controller;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+/**
+ *  Java Flight Recorder events tracing single interactions with the server, so a latency spike
+ * can be traced back to the session and command that caused it after the fact.
+ * Only events slower than their threshold are recorded, and while recording is off an event
+ * costs no more than the allocation the JIT removes, so recording can stay on in production:
+ *  java -XX:StartFlightRecording=maxage=1h,filename=logs/hangman.jfr ... server.net.GameServer
+ * To record every interaction, add the settings of 'hangman-trace.jfc' to the recording:
+ *  -XX:StartFlightRecording=settings=default,settings=hangman-trace.jfc,...
+ * Fields are only filled in once 'shouldCommit' says the event will be recorded.
+ */
+public class GameTrace {
+
+    private GameTrace() {
+    }
+    /**
+     * A player connection accepted by the server, until its handler thread has been started
+     */
+    @Name("hangman.Accept")
+    @Label("Accept Player")
+    @Category("Hangman")
+    @StackTrace(false)
+    @Threshold("1 ms")
+    public static class Accept extends Event {
+        @Label("Session Id")
+        public long sessionId;
+        @Label("Remote Address")
+        public String remoteAddress;
+    }
+    /**
+     * One line received from a player, from the moment it was read until every response was queued
+     */
+    @Name("hangman.Command")
+    @Label("Player Command")
+    @Category("Hangman")
+    @StackTrace(false)
+    @Threshold("5 ms")
+    public static class Command extends Event {
+        @Label("Session Id")
+        public long sessionId;
+        @Label("Command")
+        @Description("Type of the received message, for example GUESS")
+        public String command;
+        @Label("Line Length")
+        public int lineLength;
+        @Label("Throttled")
+        public boolean throttled;
+        @Label("Dispatch Time")
+        @Description("Time spent processing the line in the game session")
+        @Timespan(Timespan.NANOSECONDS)
+        public long dispatchTime;
+        @Label("Respond Time")
+        @Description("Time spent queueing the responses, including waiting for a full outbound queue")
+        @Timespan(Timespan.NANOSECONDS)
+        public long respondTime;
+        @Label("Responses")
+        public int responses;
+    }
+    /**
+     * A guess evaluated by the model
+     */
+    @Name("hangman.ProcessGuess")
+    @Label("Process Guess")
+    @Category("Hangman")
+    @StackTrace(false)
+    @Threshold("1 ms")
+    public static class ProcessGuess extends Event {
+        @Label("Session Id")
+        public long sessionId;
+        @Label("Guess Length")
+        public int guessLength;
+        @Label("Word Length")
+        public int wordLength;
+        @Label("Valid")
+        @Description("False if the guess was neither a letter nor as long as the word")
+        public boolean valid;
+    }
+    /**
+     * A word taken from the model, including waiting for the words to load
+     */
+    @Name("hangman.GetWord")
+    @Label("Get Word")
+    @Category("Hangman")
+    @StackTrace(false)
+    @Threshold("1 ms")
+    public static class GetWord extends Event {
+        @Label("Session Id")
+        @Description("The session the word is for, 0 for words shared by a tournament or match")
+        public long sessionId;
+        @Label("Waited For Dictionary")
+        public boolean waitedForDictionary;
+    }
+}
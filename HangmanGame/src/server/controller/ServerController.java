@@ -1,6 +1,10 @@
 package server.controller;
 
+import server.model.GameEvent;
+import server.model.GameEventLog;
 import server.model.WordLogic;
+import server.model.WordStatistics;
+import server.model.WordTemplate;
 
 /**
  *  ServerController used by classes in the server 'net' layer to communicate with the
@@ -9,25 +13,114 @@ import server.model.WordLogic;
  */
 public class ServerController {
     private final WordLogic model;
+    private final WordStatistics statistics;
+    private final GameEventLog eventLog;
     
     public ServerController () {
         this.model = new WordLogic();
+        this.statistics = new WordStatistics();
+        this.eventLog = new GameEventLog(statistics);
+        model.whenReady(() -> StartupClock.reached("dictionary loaded"));
     }
     /**
-     * Generate a new, randomized word from the model
-     * @return  a random word
+     * Generate a new, randomized word from the model, waiting until
+     * the model is ready if the words are still being loaded
+     * @return  the template of a random word
      */
-    public String getWord() {
-        return model.getWord();
+    public WordTemplate getTemplate() {
+        return getTemplate(0);
     }
     /**
-     * Process a user guess in the model
+     * Generate a new, randomized word for a session, traced as a 'GameTrace.GetWord' event.
+     * The template of the word is taken from the template cache of the model
+     * @param sessionId the session the word is for
+     * @return  the template of a random word
+     */
+    public WordTemplate getTemplate(long sessionId) {
+        GameTrace.GetWord event = new GameTrace.GetWord();
+        event.begin();
+        boolean ready = model.isReady();
+        WordTemplate word = model.getTemplate();
+        event.end();
+        if (event.shouldCommit()) {
+            event.sessionId = sessionId;
+            event.waitedForDictionary = !ready;
+            event.commit();
+        }
+        StartupClock.reached("first game");
+        return word;
+    }
+    /**
+     * @param word  a word that was not generated by the model, for example one restored from a snapshot
+     * @return      the template of the word
+     */
+    public WordTemplate templateOf(String word) {
+        return model.templateOf(word);
+    }
+    /**
+     * @return  the counters of the template cache of the model as a JSON object
+     */
+    public String templateCacheJson() {
+        return model.templateCacheJson();
+    }
+    /**
+     * @return  true once the model is ready to generate words
+     */
+    public boolean isReady() {
+        return model.isReady();
+    }
+    /**
+     * Runs an action once the model is ready to generate words
+     * @param action    the action to run, immediately if the model is ready
+     */
+    public void whenReady(Runnable action) {
+        model.whenReady(action);
+    }
+    /**
+     * Process a user guess in the model, traced as a 'GameTrace.ProcessGuess' event
+     * @param sessionId the session the guess was made in
      * @param guess the word/letter guessed by the user
-     * @param word  the word to be guessed
-     * @param hidden    the current progression of the hidden word
-     * @return  the updated hidden word
+     * @param template  the template of the word to be guessed, which must fit the guess
+     * @param revealed  the letters shown so far, bit i set if letter i is shown
+     * @return  the letters shown after the guess
+     */
+    public long processGuess(long sessionId, String guess, WordTemplate template, long revealed) {
+        GameTrace.ProcessGuess event = new GameTrace.ProcessGuess();
+        event.begin();
+        long updated = model.processGuess(guess, template, revealed);
+        event.end();
+        if (event.shouldCommit()) {
+            event.sessionId = sessionId;
+            event.guessLength = guess.length();
+            event.wordLength = template.length();
+            event.valid = template.fits(guess);
+            event.commit();
+        }
+        return updated;
+    }
+    /**
+     * Process many letter guesses in one call, see 'WordLogic.processLetters'
+     * @param words     the words to be guessed
+     * @param packed    the words packed by 'LetterMatcher.pack', or null entries for unpacked words
+     * @param letters   the guessed letters
+     * @param revealed  the letters shown of every word, bit j set if letter j is shown, updated in place
+     * @param count     the number of guesses
+     * @return  the number of guesses that showed at least one new letter
+     */
+    public int processLetters(String[] words, long[][] packed, char[] letters, long[] revealed, int count) {
+        return model.processLetters(words, packed, letters, revealed, count);
+    }
+    /**
+     * Record that happened in a game in the event log
+     * @param event the event to record
+     */
+    public void record(GameEvent event) {
+        eventLog.append(event);
+    }
+    /**
+     * @return  the statistics aggregated from all recorded events
      */
-    public String processGuess(String guess, String word, String hidden) {
-        return model.processGuess(guess, word, hidden);
+    public WordStatistics getStatistics() {
+        return statistics;
     }
 }
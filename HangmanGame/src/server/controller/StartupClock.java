@@ -0,0 +1,31 @@
+package server.controller;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import server.log.ServerLog;
+/**
+ *  Reports how long after the JVM was started the server reached each startup milestone,
+ * such as accepting the first player or starting the first game. Every milestone is only
+ * reported the first time it is reached, as a record of the 'ServerLog'.
+ */
+public class StartupClock {
+
+    private static final long JVM_START = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private static final ConcurrentHashMap<String, Long> REACHED = new ConcurrentHashMap<>();
+
+    private StartupClock() {
+    }
+    /**
+     * Reports a milestone if it has not been reached before
+     * @param milestone description of the milestone, for example 'first game'
+     */
+    public static void reached(String milestone) {
+        if (REACHED.containsKey(milestone)) {
+            return;
+        }
+        long millis = System.currentTimeMillis() - JVM_START;
+        if (REACHED.putIfAbsent(milestone, millis) == null) {
+            ServerLog.info("Startup", milestone + " after " + millis + " ms");
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package server.log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+/**
+ *  Log of the errors and lifecycle of the server, written without ever blocking the thread
+ * that logs. A record is claimed in a preallocated ring of 'RING_SIZE' records by a compare and
+ * set of the ring position, filled in, and published by setting the sequence number of its
+ * entry, so no lock is taken and nothing is allocated. If the ring is full the record is dropped
+ * and counted. A single writer thread formats the records in batches into a reused buffer,
+ * without allocating for the time, session id or text of a record, appends them to 'LOG_FILE'
+ * and echoes them to the console. The writer is woken every 'WAKE_STEP' records, so bursts do
+ * not fill the ring while it sleeps. The log is rotated once it reaches 'MAX_FILE_SIZE',
+ * keeping 'MAX_FILES' files: server.log, server.log.1, ...
+ *
+ * Records are written as:
+ *  2026-01-31T12:00:00.000Z LEVEL [thread] event session=id: detail
+ * followed by the stack trace of the exception if there is one. The event should be a constant,
+ * what varies goes into the session id and the detail.
+ * Records below the level set by -Dhangman.log.console (INFO, WARN, ERROR or OFF) are not echoed.
+ */
+public final class ServerLog implements Runnable {
+    /**
+     * How severe a record is
+     */
+    public enum Level {
+        INFO, WARN, ERROR, OFF
+    }
+
+    private static final long   NO_SESSION      = -1;
+
+    private final String    LOG_FILE        = "logs/server.log";
+    private final int       RING_SIZE       = 1 << 13;          // records waiting to be written before dropping
+    private final int       BATCH_SIZE      = 1024;             // max records written per batch
+    private final int       BUFFER_SIZE     = 1 << 16;          // bytes formatted before writing to the file
+    private final long      MAX_FILE_SIZE   = 16L << 20;        // bytes written to the log before rotating it
+    private final int       MAX_FILES       = 5;                // log files kept, the current one included
+    private final long      IDLE_PARK       = 50;               // time the writer sleeps when there is nothing to write, in millis
+    private final int       WAKE_STEP       = RING_SIZE / 2;    // records logged between waking the writer
+
+    private final Record[] ring = new Record[RING_SIZE];
+    private final AtomicLongArray sequences = new AtomicLongArray(RING_SIZE);
+    private final AtomicLong claimed = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private final byte[] bytes = new byte[BUFFER_SIZE];
+    private final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    private final byte[] digits = new byte[20];
+    private final Level console;
+    private final Path path = Paths.get(LOG_FILE);
+    private final Thread writer;
+    private long next;                  // position of the next record to write, only used by the writer
+    private int echoFrom = -1;          // start of the formatted record to echo, -1 if it is not echoed
+    private FileChannel file;
+    private long fileSize;
+
+    private ServerLog() {
+        for (int i = 0; i < RING_SIZE; i++) {
+            ring[i] = new Record();
+            sequences.set(i, i);
+        }
+        Level level;
+        try {
+            level = Level.valueOf(System.getProperty("hangman.log.console", "INFO").toUpperCase());
+        } catch (IllegalArgumentException e) {
+            level = Level.INFO;
+        }
+        console = level;
+        open();
+        writer = new Thread(this, "server-log");
+        writer.setDaemon(true);
+        writer.start();
+        try {
+            Runtime.getRuntime().addShutdownHook(new Thread(this::flushAll));
+        } catch (IllegalStateException e) {
+            // first used while shutting down, records are written by 'flush'
+        }
+    }
+    /**
+     * The log, started when first used
+     */
+    private static class Holder {
+        private static final ServerLog LOG = new ServerLog();
+    }
+
+    public static void info(String event) {
+        Holder.LOG.append(Level.INFO, event, NO_SESSION, null, null);
+    }
+    public static void info(String event, long session) {
+        Holder.LOG.append(Level.INFO, event, session, null, null);
+    }
+    public static void info(String event, String detail) {
+        Holder.LOG.append(Level.INFO, event, NO_SESSION, detail, null);
+    }
+    public static void warn(String event, String detail) {
+        Holder.LOG.append(Level.WARN, event, NO_SESSION, detail, null);
+    }
+    public static void warn(String event, long session, String detail) {
+        Holder.LOG.append(Level.WARN, event, session, detail, null);
+    }
+    public static void warn(String event, Throwable thrown) {
+        Holder.LOG.append(Level.WARN, event, NO_SESSION, null, thrown);
+    }
+    public static void warn(String event, long session, Throwable thrown) {
+        Holder.LOG.append(Level.WARN, event, session, null, thrown);
+    }
+    public static void error(String event, String detail) {
+        Holder.LOG.append(Level.ERROR, event, NO_SESSION, detail, null);
+    }
+    public static void error(String event, Throwable thrown) {
+        Holder.LOG.append(Level.ERROR, event, NO_SESSION, null, thrown);
+    }
+    /**
+     * Writes every record logged so far before returning, for example before the server exits
+     */
+    public static void flush() {
+        Holder.LOG.flushAll();
+    }
+    /**
+     * @return  the number of records logged and the number dropped because the ring was full, as a JSON object
+     */
+    public static String toJson() {
+        ServerLog log = Holder.LOG;
+        return "{\"logged\":" + log.claimed.get() + ",\"dropped\":" + log.dropped.sum() + "}";
+    }
+    /**
+     * Claims an entry of the ring, fills it in and publishes it, never blocks
+     */
+    private void append(Level level, String event, long session, String detail, Throwable thrown) {
+        long position;
+        int index;
+        while (true) {
+            position = claimed.get();
+            index = (int) position & (RING_SIZE - 1);
+            long sequence = sequences.get(index);
+            if (sequence == position) {
+                if (claimed.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (sequence < position) {
+                dropped.increment();        // the writer has not yet taken the record a lap ago
+                return;
+            }
+        }
+        Record record = ring[index];
+        record.time = System.currentTimeMillis();
+        record.level = level;
+        record.thread = Thread.currentThread().getName();
+        record.event = event;
+        record.session = session;
+        record.detail = detail;
+        record.thrown = thrown;
+        sequences.lazySet(index, position + 1);
+        if ((position & (WAKE_STEP - 1)) == 0) {
+            LockSupport.unpark(writer);     // a burst would fill the ring before the writer wakes up
+        }
+    }
+    /**
+     * The writer thread spends its lifetime here, writing records in batches as they are published
+     */
+    @Override
+    public void run() {
+        while (true) {
+            if (write(BATCH_SIZE) == 0) {
+                LockSupport.parkNanos(IDLE_PARK * 1000000);
+            }
+        }
+    }
+    private void flushAll() {
+        while (write(BATCH_SIZE) > 0) {
+            // until the ring is empty
+        }
+    }
+    /**
+     * Formats and writes the published records, at most 'max'
+     * @return  the number of records written
+     */
+    private synchronized int write(int max) {
+        int count = 0;
+        while (count < max) {
+            int index = (int) next & (RING_SIZE - 1);
+            if (sequences.get(index) != next + 1) {
+                break;
+            }
+            Record record = ring[index];
+            format(record);
+            record.thread = null;
+            record.event = null;
+            record.detail = null;
+            record.thrown = null;
+            sequences.lazySet(index, next + RING_SIZE);
+            next++;
+            count++;
+        }
+        if (count > 0) {
+            writeBuffer();
+            System.out.flush();
+            if (fileSize >= MAX_FILE_SIZE) {
+                rotate();
+            }
+        }
+        return count;
+    }
+    private void format(Record record) {
+        echoFrom = record.level.compareTo(console) >= 0 ? buffer.position() : -1;
+        putTime(record.time);
+        putByte(' ');
+        putString(record.level.name());
+        putString(record.level == Level.ERROR ? " [" : "  [");
+        putString(record.thread);
+        putString("] ");
+        putString(record.event);
+        if (record.session != NO_SESSION) {
+            putString(" session=");
+            putLong(record.session);
+        }
+        if (record.detail != null) {
+            putString(": ");
+            putString(record.detail);
+        }
+        putByte('\n');
+        if (record.thrown != null) {
+            putThrown(record.thrown);
+        }
+        echo();
+        echoFrom = -1;
+    }
+    /**
+     * Formats an exception and its causes like 'printStackTrace', on the writer thread
+     */
+    private void putThrown(Throwable thrown) {
+        for (Throwable t = thrown; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t != thrown) {
+                putString("Caused by: ");
+            }
+            putString(t.toString());
+            putByte('\n');
+            for (StackTraceElement element : t.getStackTrace()) {
+                putString("\tat ");
+                putString(element.toString());
+                putByte('\n');
+            }
+        }
+    }
+    /**
+     * Formats epoch millis as an ISO-8601 UTC time, computing the date from the day number
+     */
+    private void putTime(long millis) {
+        long days = Math.floorDiv(millis, 86400000L);
+        long ms = Math.floorMod(millis, 86400000L);
+        long z = days + 719468;                             // days since 0000-03-01
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shifted = (5 * dayOfYear + 2) / 153;           // months since March
+        long day = dayOfYear - (153 * shifted + 2) / 5 + 1;
+        long month = shifted < 10 ? shifted + 3 : shifted - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        putPadded(year, 4);
+        putByte('-');
+        putPadded(month, 2);
+        putByte('-');
+        putPadded(day, 2);
+        putByte('T');
+        putPadded(ms / 3600000, 2);
+        putByte(':');
+        putPadded(ms / 60000 % 60, 2);
+        putByte(':');
+        putPadded(ms / 1000 % 60, 2);
+        putByte('.');
+        putPadded(ms % 1000, 3);
+        putByte('Z');
+    }
+    private void putPadded(long value, int width) {
+        for (int i = width - 1; i >= 0; i--) {
+            digits[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        for (int i = 0; i < width; i++) {
+            putByte(digits[i]);
+        }
+    }
+    private void putLong(long value) {
+        if (value < 0) {
+            putByte('-');
+        }
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + Math.abs(value % 10));
+            value /= 10;
+        } while (value != 0);
+        while (count > 0) {
+            putByte(digits[--count]);
+        }
+    }
+    /**
+     * Encodes a string as UTF-8, surrogate pairs are written as '?'
+     */
+    private void putString(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                putByte(c);
+            } else if (c < 0x800) {
+                putByte(0xC0 | (c >> 6));
+                putByte(0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                putByte('?');
+            } else {
+                putByte(0xE0 | (c >> 12));
+                putByte(0x80 | ((c >> 6) & 0x3F));
+                putByte(0x80 | (c & 0x3F));
+            }
+        }
+    }
+    private void putByte(int b) {
+        if (!buffer.hasRemaining()) {
+            echo();
+            writeBuffer();
+            echoFrom = echoFrom < 0 ? -1 : 0;
+        }
+        buffer.put((byte) b);
+    }
+    /**
+     * Copies the record formatted since 'echoFrom' to the console
+     */
+    private void echo() {
+        if (echoFrom >= 0) {
+            System.out.write(bytes, echoFrom, buffer.position() - echoFrom);
+        }
+    }
+    private void writeBuffer() {
+        buffer.flip();
+        if (file != null) {
+            try {
+                while (buffer.hasRemaining()) {
+                    fileSize += file.write(buffer);
+                }
+            } catch (IOException e) {
+                System.out.println("Error when writing server log, only logging to the console");
+                file = null;
+            }
+        }
+        buffer.clear();
+    }
+    private void open() {
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            fileSize = file.size();
+        } catch (IOException e) {
+            System.out.println("Error when opening server log: " + LOG_FILE + ", only logging to the console");
+            file = null;
+        }
+    }
+    /**
+     * Moves server.log to server.log.1, server.log.1 to server.log.2 and so on, dropping the oldest
+     */
+    private void rotate() {
+        try {
+            file.close();
+            for (int i = MAX_FILES - 1; i > 0; i--) {
+                Path older = Paths.get(LOG_FILE + "." + i);
+                Path newer = i == 1 ? path : Paths.get(LOG_FILE + "." + (i - 1));
+                if (Files.exists(newer)) {
+                    Files.move(newer, older, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Error when rotating server log: " + e.getMessage());
+        }
+        open();
+    }
+    /**
+     * An entry of the ring, reused for every lap
+     */
+    private static class Record {
+        private long time;
+        private Level level;
+        private String thread;
+        private String event;
+        private long session;
+        private String detail;
+        private Throwable thrown;
+    }
+}
@@ -0,0 +1,150 @@
+package server.model;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+/**
+ *  Builds the dictionary used by the server from raw word files. Every word is normalized
+ * to Unicode NFC and lowercased for the dictionary locale, then words the server would not
+ * accept as guesses and duplicates are removed. The result is sorted, and can be written
+ * to a 'DictionaryFile' the server loads directly.
+ * Capitalized words are removed as proper nouns only with -drop-proper-nouns, as that only holds
+ * for languages like English, in German for example every noun is capitalized.
+ *
+ * Usage: DictionaryBuilder [-locale TAG] [-drop-proper-nouns] OUTPUT INPUT...
+ */
+public class DictionaryBuilder {
+
+    public static final int MAX_WORD_LENGTH = 64;   // longest word a game session can hold
+
+    private final Locale locale;
+    private final boolean dropProperNouns;
+    private final LongAdder lines = new LongAdder();
+    private final LongAdder blank = new LongAdder();
+    private final LongAdder properNouns = new LongAdder();
+    private final LongAdder unplayable = new LongAdder();
+    private long duplicates;
+    private int kept;
+
+    /**
+     * @param locale            the locale words are lowercased for
+     * @param dropProperNouns   true to remove capitalized words as proper nouns
+     */
+    public DictionaryBuilder(Locale locale, boolean dropProperNouns) {
+        this.locale = locale;
+        this.dropProperNouns = dropProperNouns;
+    }
+
+    public static void main(String[] args) {
+        Locale locale = Locale.ENGLISH;
+        boolean dropProperNouns = false;
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("-"); i++) {
+            if (args[i].equals("-locale") && i + 1 < args.length) {
+                locale = Locale.forLanguageTag(args[++i]);
+            } else if (args[i].equals("-drop-proper-nouns")) {
+                dropProperNouns = true;
+            } else {
+                System.out.println("Unknown option: " + args[i]);
+                System.exit(1);
+            }
+        }
+        if (args.length - i < 2) {
+            System.out.println("Usage: DictionaryBuilder [-locale TAG] [-drop-proper-nouns] OUTPUT INPUT...");
+            System.exit(1);
+        }
+        Path output = Paths.get(args[i]);
+        List<Path> inputs = new ArrayList<>();
+        for (i++; i < args.length; i++) {
+            inputs.add(Paths.get(args[i]));
+        }
+        try {
+            DictionaryBuilder builder = new DictionaryBuilder(locale, dropProperNouns);
+            DictionaryFile.write(output, builder.build(inputs));
+            System.out.println("Dictionary: " + builder.getReport());
+            System.out.println("Wrote dictionary " + output);
+        } catch (IOException e) {
+            System.out.println("Error when building dictionary: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+    /**
+     * Loads, normalizes, filters and deduplicates the words of the given files,
+     * counting how many words were removed for each reason, see 'getReport'
+     * @param inputs    the word files to read, one word per line
+     * @return          the sorted words without duplicates
+     * @throws IOException  if a file can not be read
+     */
+    public List<String> build(List<Path> inputs) throws IOException {
+        DictionaryLoader loader = new DictionaryLoader(this::normalize);
+        List<String> words = new ArrayList<>();
+        for (Path input : inputs) {
+            words.addAll(loader.load(input));
+        }
+        Collections.sort(words);
+        List<String> unique = new ArrayList<>(words.size());
+        for (String word : words) {
+            if (unique.isEmpty() || !unique.get(unique.size() - 1).equals(word)) {
+                unique.add(word);
+            }
+        }
+        duplicates = words.size() - unique.size();
+        kept = unique.size();
+        return unique;
+    }
+    /**
+     * Normalizes one line of a word file, called concurrently by the loader
+     * @param line  the line
+     * @return      the normalized word, or null if the word is removed
+     */
+    private String normalize(String line) {
+        lines.increment();
+        String word = Normalizer.normalize(line.trim(), Normalizer.Form.NFC);
+        if (word.isEmpty()) {
+            blank.increment();
+            return null;
+        }
+        if (dropProperNouns && Character.isUpperCase(word.codePointAt(0))) {
+            properNouns.increment();
+            return null;
+        }
+        word = word.toLowerCase(locale);
+        if (!isPlayable(word)) {
+            unplayable.increment();
+            return null;
+        }
+        return word;
+    }
+    /**
+     * Checks that a word only contains letters, as guesses containing anything
+     * else are rejected by the server and the word could never be completed,
+     * and that it is no longer than 'MAX_WORD_LENGTH'
+     * @param word  the word to check
+     * @return      true if the word can be guessed
+     */
+    private boolean isPlayable(String word) {
+        if (word.length() > MAX_WORD_LENGTH) {
+            return false;
+        }
+        for (char c : word.toCharArray()) {
+            if (!Character.isLetter(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    /**
+     * @return  how many words the last 'build' read, removed for each reason and kept
+     */
+    public String getReport() {
+        return "read " + lines.sum() + " words, removed " + properNouns.sum() + " proper nouns, "
+                + unplayable.sum() + " unplayable, " + blank.sum() + " blank and " + duplicates
+                + " duplicates, kept " + kept;
+    }
+}
@@ -0,0 +1,101 @@
+package server.model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+/**
+ *  Reads and writes the compact dictionary built by the 'DictionaryBuilder'.
+ * The words are sorted, so every word is stored as the number of leading UTF-8 bytes
+ * it shares with the previous word followed by the rest of its bytes:
+ *  int magic, int number of words, then for every word
+ *  varint shared bytes, varint remaining bytes, remaining bytes
+ */
+public class DictionaryFile {
+
+    private static final int MAGIC = 0x48574431;       // 'HWD1'
+
+    private DictionaryFile() {
+    }
+    /**
+     * Writes sorted words to a dictionary file
+     * @param path  the file to write
+     * @param words the words to write, sorted and without duplicates
+     * @throws IOException  if the file can not be written
+     */
+    public static void write(Path path, List<String> words) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(words.size());
+            byte[] previous = new byte[0];
+            for (String word : words) {
+                byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+                int shared = 0;
+                int max = Math.min(previous.length, bytes.length);
+                while (shared < max && previous[shared] == bytes[shared]) {
+                    shared++;
+                }
+                writeVarInt(out, shared);
+                writeVarInt(out, bytes.length - shared);
+                out.write(bytes, shared, bytes.length - shared);
+                previous = bytes;
+            }
+        }
+    }
+    /**
+     * Reads every word of a dictionary file
+     * @param path  the file to read
+     * @return      the sorted words of the dictionary
+     * @throws IOException  if the file can not be read or is not a dictionary file
+     */
+    public static List<String> read(Path path) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(path));
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not a dictionary file: " + path);
+            }
+            int count = in.getInt();
+            List<String> words = new ArrayList<>(count);
+            byte[] word = new byte[64];
+            for (int i = 0; i < count; i++) {
+                int shared = readVarInt(in);
+                int remaining = readVarInt(in);
+                if (shared + remaining > word.length) {
+                    word = Arrays.copyOf(word, Math.max(word.length * 2, shared + remaining));
+                }
+                in.get(word, shared, remaining);
+                words.add(new String(word, 0, shared + remaining, StandardCharsets.UTF_8));
+            }
+            return words;
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt dictionary file: " + path, e);
+        }
+    }
+    private static void writeVarInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+    private static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package server.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+import server.controller.StartupClock;
+/**
+ *  Loads word files in parallel. The file is memory-mapped and split into chunks that start
+ * and end on line breaks, every chunk is decoded and normalized on the fork-join pool and the
+ * words of all chunks are then merged in file order. Timing is reported for every loaded file,
+ * and progress is reported while loading large files, both as 'StartupClock' milestones.
+ */
+public class DictionaryLoader {
+
+    private final int   MIN_CHUNK_SIZE  = 1 << 20;      // smallest chunk worth its own task
+    private final int   MAX_CHUNK_SIZE  = 1 << 28;      // largest chunk, must fit a single mapping
+    private final long  REPORT_SIZE     = 1 << 25;      // files larger than this report their progress
+    private final int   REPORT_STEPS    = 10;           // number of progress reports for a large file
+
+    private final ForkJoinPool pool;
+    private final UnaryOperator<String> normalizer;
+
+    /**
+     * Creates a loader using the common fork-join pool
+     * @param normalizer    applied to every line of the file, lines it maps to null or an empty string are skipped
+     */
+    public DictionaryLoader(UnaryOperator<String> normalizer) {
+        this(ForkJoinPool.commonPool(), normalizer);
+    }
+
+    public DictionaryLoader(ForkJoinPool pool, UnaryOperator<String> normalizer) {
+        this.pool = pool;
+        this.normalizer = normalizer;
+    }
+    /**
+     * Loads every word of a file with one word per line
+     * @param path  the file to load
+     * @return      the normalized words, in the order they are found in the file
+     * @throws IOException  if the file can not be read
+     */
+    public List<String> load(Path path) throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long[] bounds = chunkBounds(channel, size);
+            Progress progress = new Progress(path, size);
+            List<ForkJoinTask<List<String>>> tasks = new ArrayList<>();
+            for (int i = 0; i + 1 < bounds.length; i++) {
+                tasks.add(pool.submit(new ChunkTask(channel, bounds[i], bounds[i + 1], progress)));
+            }
+            List<List<String>> chunks = new ArrayList<>(tasks.size());
+            int total = 0;
+            for (ForkJoinTask<List<String>> task : tasks) {
+                List<String> chunk = joinChunk(task);
+                chunks.add(chunk);
+                total += chunk.size();
+            }
+            List<String> words = new ArrayList<>(total);
+            for (List<String> chunk : chunks) {
+                words.addAll(chunk);
+            }
+            long millis = (System.nanoTime() - start) / 1000000;
+            StartupClock.reached("loaded " + words.size() + " words from " + path + " in " + millis + " ms ("
+                    + tasks.size() + " chunks, " + pool.getParallelism() + " threads)");
+            return words;
+        }
+    }
+    /**
+     * Waits for a chunk to be loaded, unwrapping a failure to read the chunk
+     */
+    private List<String> joinChunk(ForkJoinTask<List<String>> task) throws IOException {
+        try {
+            return task.join();
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+    /**
+     * Splits the file into chunks of roughly equal size, moving every split to just after
+     * the next line break so no line is divided between two chunks
+     * @return  the start of every chunk, followed by the size of the file
+     */
+    private long[] chunkBounds(FileChannel channel, long size) throws IOException {
+        long chunkSize = size / (pool.getParallelism() * 4L);
+        chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, chunkSize));
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer scan = ByteBuffer.allocate(4096);
+        long position = chunkSize;
+        while (position < size) {
+            long split = nextLine(channel, position, scan);
+            if (split >= size) {
+                break;
+            }
+            if (split - bounds.get(bounds.size() - 1) > MAX_CHUNK_SIZE) {
+                throw new IOException("Line longer than " + MAX_CHUNK_SIZE + " bytes at position " + position);
+            }
+            bounds.add(split);
+            position = split + chunkSize;
+        }
+        bounds.add(size);
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+    /**
+     * @return  the position after the first line break at or after 'position', or the end of the file
+     */
+    private long nextLine(FileChannel channel, long position, ByteBuffer scan) throws IOException {
+        while (true) {
+            scan.clear();
+            int read = channel.read(scan, position);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (scan.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+    }
+    /**
+     * Decodes and normalizes the lines of one chunk of the file
+     */
+    private class ChunkTask implements Callable<List<String>> {
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        private final Progress progress;
+
+        private ChunkTask(FileChannel channel, long start, long end, Progress progress) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.progress = progress;
+        }
+
+        @Override
+        public List<String> call() throws IOException {
+            int length = (int) (end - start);
+            List<String> words = new ArrayList<>(length / 8);
+            MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            byte[] line = new byte[256];
+            int lineLength = 0;
+            for (int i = 0; i <= length; i++) {
+                byte b = i < length ? chunk.get(i) : (byte) '\n';
+                if (b != '\n') {
+                    if (lineLength == line.length) {
+                        byte[] longer = new byte[line.length * 2];
+                        System.arraycopy(line, 0, longer, 0, lineLength);
+                        line = longer;
+                    }
+                    line[lineLength++] = b;
+                    continue;
+                }
+                if (lineLength > 0 && line[lineLength - 1] == '\r') {
+                    lineLength--;
+                }
+                if (lineLength > 0) {
+                    String word = normalizer.apply(new String(line, 0, lineLength, StandardCharsets.UTF_8));
+                    if (word != null && !word.isEmpty()) {
+                        words.add(word);
+                    }
+                }
+                lineLength = 0;
+            }
+            progress.add(length);
+            return words;
+        }
+    }
+    /**
+     * Tracks how much of a file has been loaded, reporting every 'REPORT_STEPS'th
+     * of the file for files larger than 'REPORT_SIZE'
+     */
+    private class Progress {
+        private final AtomicLong loaded = new AtomicLong();
+        private final Path path;
+        private final long size;
+        private int reported;
+
+        private Progress(Path path, long size) {
+            this.path = path;
+            this.size = size;
+        }
+
+        private void add(long bytes) {
+            long done = loaded.addAndGet(bytes);
+            if (size < REPORT_SIZE) {
+                return;
+            }
+            int step = (int) (done * REPORT_STEPS / size);
+            synchronized (this) {
+                if (step > reported) {
+                    reported = step;
+                    StartupClock.reached("loading " + path + " " + (step * 100 / REPORT_STEPS) + "%");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package server.model;
+/**
+ *  Something that happened in a game, recorded in the 'GameEventLog'.
+ * Which fields are used depends on the type of the event.
+ */
+public class GameEvent {
+    /**
+     * The different kinds of events recorded for a game
+     */
+    public enum Type {
+        /**
+         * A new game was started with 'word'
+         */
+        START,
+        /**
+         * The player guessed 'guess', 'hit' is true if the hidden word was updated
+         */
+        GUESS,
+        /**
+         * The player completed 'word' after 'misses' incorrect guesses in 'duration' milliseconds
+         */
+        WIN,
+        /**
+         * The player ran out of tries after 'misses' incorrect guesses in 'duration' milliseconds
+         */
+        LOSS
+    }
+
+    final Type type;
+    final long time;
+    final long session;
+    final String word;
+    final String guess;
+    final boolean hit;
+    final int misses;
+    final int duration;
+
+    private GameEvent(Type type, long session, String word, String guess, boolean hit, int misses, int duration) {
+        this.type = type;
+        this.time = System.currentTimeMillis();
+        this.session = session;
+        this.word = word;
+        this.guess = guess;
+        this.hit = hit;
+        this.misses = misses;
+        this.duration = duration;
+    }
+
+    public static GameEvent start(long session, String word) {
+        return new GameEvent(Type.START, session, word, null, false, 0, 0);
+    }
+
+    public static GameEvent guess(long session, String word, String guess, boolean hit) {
+        return new GameEvent(Type.GUESS, session, word, guess, hit, 0, 0);
+    }
+
+    public static GameEvent end(long session, String word, boolean won, int misses, int duration) {
+        return new GameEvent(won ? Type.WIN : Type.LOSS, session, word, null, won, misses, duration);
+    }
+}
@@ -0,0 +1,170 @@
+package server.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import server.log.ServerLog;
+/**
+ *  Append-only binary log of game events. Game threads only queue events, a single writer
+ * thread writes them to the log file in batches and feeds them to the 'WordStatistics'.
+ * If the queue is full the event is dropped and counted rather than blocking the game.
+ *
+ * Each record is written as:
+ *  byte type, long time (epoch millis), long session, short length + UTF-8 word, followed by
+ *  GUESS:      short length + UTF-8 guess, byte hit (1 or 0)
+ *  WIN, LOSS:  short misses, int duration (millis)
+ */
+public class GameEventLog implements Runnable {
+
+    private final String    LOG_FILE        = "logs/game-events.bin";
+    private final int       QUEUE_SIZE      = 65536;        // events waiting to be written before dropping
+    private final int       BATCH_SIZE      = 4096;         // max events written per batch
+    private final int       BUFFER_SIZE     = 1 << 16;      // bytes buffered before writing to the file
+    private final long      MAX_DELAY       = 200;          // max time an event waits in the queue, in millis
+
+    private final ArrayBlockingQueue<GameEvent> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final WordStatistics statistics;
+    private final LongAdder dropped = new LongAdder();
+    private FileChannel file;
+    private long written;
+
+    public GameEventLog(WordStatistics statistics) {
+        this.statistics = statistics;
+        try {
+            Path path = Paths.get(LOG_FILE);
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            ServerLog.error("Error when opening event log, events are only aggregated", e);
+            file = null;
+        }
+        Thread writer = new Thread(this, "game-event-log");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush));
+    }
+    /**
+     * Queues an event to be logged, never blocks
+     * @param event the event to log
+     */
+    public void append(GameEvent event) {
+        if (!queue.offer(event)) {
+            dropped.increment();
+        }
+    }
+    /**
+     * @return  the number of events dropped because the queue was full
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+    /**
+     * @return  the number of events written to the log
+     */
+    public synchronized long getWritten() {
+        return written;
+    }
+    /**
+     * The writer thread spends its lifetime here, writing and aggregating
+     * events in batches as they are queued
+     */
+    @Override
+    public void run() {
+        List<GameEvent> batch = new ArrayList<>(BATCH_SIZE);
+        while (true) {
+            try {
+                GameEvent first = queue.poll(MAX_DELAY, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                write(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+    /**
+     * Writes everything still in the queue, used when the server shuts down
+     */
+    private void flush() {
+        List<GameEvent> batch = new ArrayList<>();
+        queue.drainTo(batch);
+        write(batch);
+    }
+    /**
+     * Encodes and writes a batch of events, and adds them to the statistics
+     * @param batch the events to write
+     */
+    private synchronized void write(List<GameEvent> batch) {
+        for (GameEvent event : batch) {
+            statistics.accept(event);
+            if (file != null) {
+                if (buffer.remaining() < maxSize(event)) {
+                    writeBuffer();
+                }
+                encode(event);
+            }
+        }
+        writeBuffer();
+        written += batch.size();
+    }
+    private void writeBuffer() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                file.write(buffer);
+            }
+        } catch (IOException e) {
+            ServerLog.error("Error when writing event log, events are only aggregated", e);
+            file = null;
+        }
+        buffer.clear();
+    }
+    private int maxSize(GameEvent event) {
+        int size = 1 + 8 + 8 + 2 + event.word.length() * 3 + 2 + 4;
+        if (event.guess != null) {
+            size += 2 + event.guess.length() * 3 + 1;
+        }
+        return size;
+    }
+    private void encode(GameEvent event) {
+        buffer.put((byte) event.type.ordinal());
+        buffer.putLong(event.time);
+        buffer.putLong(event.session);
+        putString(event.word);
+        switch (event.type) {
+            case GUESS:
+                putString(event.guess);
+                buffer.put((byte) (event.hit ? 1 : 0));
+                break;
+            case WIN:
+            case LOSS:
+                buffer.putShort((short) event.misses);
+                buffer.putInt(event.duration);
+                break;
+            default:
+                break;
+        }
+    }
+    private void putString(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+}
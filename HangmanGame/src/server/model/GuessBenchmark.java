@@ -0,0 +1,183 @@
+package server.model;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.IntSupplier;
+/**
+ *  Compares evaluating letter guesses one at a time with 'processGuess', on hidden words as the
+ * server did before word templates and on word templates, against evaluating them in batches
+ * with 'processLetters', letter by letter and with packed words.
+ * Every variant evaluates the same random (word, letter) pairs from the dictionary, and is
+ * warmed up before it is timed so the JIT has compiled it.
+ *
+ * Usage: GuessBenchmark [PAIRS] [ROUNDS]
+ */
+public class GuessBenchmark {
+
+    private static final int WARMUP_ROUNDS = 20;
+
+    private final WordLogic model = new WordLogic();
+    private final String[] words;
+    private final WordTemplate[] templates;
+    private final long[][] packed;
+    private final long[][] unpacked;
+    private final char[] letters;
+    private final String[] guesses;
+    private final String[] hidden;
+    private final long[] revealed;
+    private volatile int sink;          // keeps the JIT from dropping the results
+
+    private GuessBenchmark(int pairs) {
+        Random random = new Random(42);
+        words = new String[pairs];
+        templates = new WordTemplate[pairs];
+        packed = new long[pairs][];
+        unpacked = new long[pairs][];
+        letters = new char[pairs];
+        guesses = new String[pairs];
+        hidden = new String[pairs];
+        revealed = new long[pairs];
+        for (int i = 0; i < pairs; i++) {
+            words[i] = model.getTemplate().getWord();
+            packed[i] = LetterMatcher.pack(words[i]);
+            templates[i] = new WordTemplate(words[i]);
+            letters[i] = (char) ('a' + random.nextInt(26));
+            guesses[i] = String.valueOf(letters[i]);
+            char[] dashes = new char[words[i].length()];
+            Arrays.fill(dashes, '-');
+            hidden[i] = new String(dashes);
+        }
+    }
+
+    public static void main(String[] args) {
+        int pairs = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        GuessBenchmark benchmark = new GuessBenchmark(pairs);
+        benchmark.check();
+        System.out.println("Evaluating " + pairs + " guesses, best of " + rounds + " rounds:");
+        benchmark.run("processGuess, one guess per call", rounds, benchmark::perGuess);
+        benchmark.run("processGuess, word templates", rounds, benchmark::perTemplate);
+        benchmark.run("processLetters, letter by letter", rounds, () -> benchmark.batch(benchmark.unpacked));
+        benchmark.run("processLetters, packed words", rounds, () -> benchmark.batch(benchmark.packed));
+    }
+    /**
+     * Checks that the batch and the templates find the same positions as 'processGuess' before timing them
+     */
+    private void check() {
+        batch(packed);
+        for (int i = 0; i < words.length; i++) {
+            String shown = processGuess(guesses[i], words[i], hidden[i]);
+            long expected = 0;
+            for (int j = 0; j < shown.length(); j++) {
+                if (shown.charAt(j) != '-') {
+                    expected |= 1L << j;
+                }
+            }
+            if (expected != revealed[i]) {
+                throw new IllegalStateException("Batch result differs for '" + letters[i] + "' in " + words[i]);
+            }
+            if (expected != model.processGuess(guesses[i], templates[i], 0)) {
+                throw new IllegalStateException("Template result differs for '" + letters[i] + "' in " + words[i]);
+            }
+        }
+    }
+    private void run(String name, int rounds, IntSupplier variant) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sink += variant.getAsInt();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            sink += variant.getAsInt();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("  %-36s %8.1f ns per guess%n", name, (double) best / words.length);
+    }
+    private int perGuess() {
+        int succesful = 0;
+        for (int i = 0; i < words.length; i++) {
+            if (!processGuess(guesses[i], words[i], hidden[i]).equals(hidden[i])) {
+                succesful++;
+            }
+        }
+        return succesful;
+    }
+    private int perTemplate() {
+        int succesful = 0;
+        for (int i = 0; i < words.length; i++) {
+            if (model.processGuess(guesses[i], templates[i], 0) != 0) {
+                succesful++;
+            }
+        }
+        return succesful;
+    }
+    private int batch(long[][] words) {
+        Arrays.fill(revealed, 0);
+        return model.processLetters(this.words, words, letters, revealed, revealed.length);
+    }
+    /**
+     * Replaces dashes in the hidden word with the guessed letter
+     * @param letter    the letter to be inserted into the hidden word
+     * @param word      the word to be guessed
+     * @param current   the current hidden word
+     * @return          the updated hidden word
+     */
+    private static String replaceAll(char letter, String word, String current) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (c == letter) {
+                sb.append(c);
+            } else {
+                sb.append(current.charAt(i));
+            }
+        }
+        return sb.toString();
+    }
+    /**
+     * Checks if the word to be guessed contains the guessed char. If so,
+     * replace all dashes from the hidden word where the letter is found in
+     * the word to be guessed.
+     * @param word      the word to be guessed by the user
+     * @param guess     the guessed character
+     * @param hidden    the current hidden word
+     * @return          the updated hidden word
+     */
+    private static String guessChar(String word, String guess, String hidden) {
+        String newHidden = hidden;
+        if (word.contains(guess)) {
+            newHidden = replaceAll(guess.charAt(0), word, hidden);
+        }
+        return newHidden;
+    }
+    /**
+     * Checks if the users guess of the complete word is correct
+     * @param word      the word to be guessed
+     * @param guess     the users guess
+     * @param hidden    the current hidden word
+     * @return          the hidden word or the correctly guessed word
+     */
+    private static String guessWord(String word, String guess, String hidden) {
+        if (word.equals(guess)) 
+                return word;
+        /*else*/return hidden;
+    }
+    /**
+     * Processes a user guess on the hidden word as the server did before word templates,
+     * kept here only as the baseline of the benchmark
+     * @param guess     the users guess
+     * @param word      the word to be guessed
+     * @param hidden    the current hidden word
+     * @return          the updated hidden word
+     */
+    private static String processGuess(String guess, String word, String hidden) {
+        String guess1 = guess.toLowerCase();
+        if (guess.length() == 1) {
+            return guessChar(word, guess1, hidden);
+        } else if (guess.length() == word.length()) {
+            return guessWord(word, guess1, hidden);
+        } else {
+            return null;
+        } 
+    }
+}
@@ -0,0 +1,73 @@
+package server.model;
+
+/**
+ *  Finds every position of a guessed letter in a word, eight letters at a time.
+ * A word is packed once into longs of eight one-byte letters, after which a letter is
+ * compared with eight letters of the word by a few arithmetic operations on a long
+ * (SIMD within a register), instead of one comparison per letter.
+ * Words with letters outside of ASCII can't be packed into bytes and are compared one
+ * letter at a time. Positions are returned as masks, bit i set if letter i matches,
+ * so words can be at most 64 letters ('DictionaryBuilder.MAX_WORD_LENGTH').
+ */
+public class LetterMatcher {
+
+    private static final long ONES      = 0x0101010101010101L;  // one in every byte
+    private static final long LOW_BITS  = 0x7F7F7F7F7F7F7F7FL;  // every bit but the highest of every byte
+    private static final long GATHER    = 0x0102040810204080L;  // moves the lowest bit of byte i to bit 56 + i
+
+    private LetterMatcher() {
+    }
+    /**
+     * Packs a word into longs, letter i in byte i % 8 of long i / 8
+     * @param word  the word to pack
+     * @return      the packed word, or null if the word has letters outside of ASCII or is too long
+     */
+    public static long[] pack(String word) {
+        if (word.length() > DictionaryBuilder.MAX_WORD_LENGTH) {
+            return null;
+        }
+        long[] packed = new long[(word.length() + 7) / 8];
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (c > 0x7F) {
+                return null;
+            }
+            packed[i / 8] |= (long) c << (8 * (i % 8));
+        }
+        return packed;
+    }
+    /**
+     * @param packed    a word packed by 'pack'
+     * @param letter    the letter to find
+     * @return          the positions of the letter in the word
+     */
+    public static long positions(long[] packed, char letter) {
+        if (letter == 0 || letter > 0x7F) {
+            return 0;
+        }
+        long letters = ONES * letter;
+        long positions = 0;
+        for (int i = 0; i < packed.length; i++) {
+            long diff = packed[i] ^ letters;
+            // highest bit of every byte set where the byte of diff is zero, the letter matched
+            long zero = ~(((diff & LOW_BITS) + LOW_BITS) | diff | LOW_BITS);
+            positions |= (((zero >>> 7) * GATHER) >>> 56) << (8 * i);
+        }
+        return positions;
+    }
+    /**
+     * Finds the positions of a letter one letter at a time, for words 'pack' could not pack
+     * @param word      the word
+     * @param letter    the letter to find
+     * @return          the positions of the letter in the word
+     */
+    public static long positions(String word, char letter) {
+        long positions = 0;
+        for (int i = 0; i < word.length() && i < 64; i++) {
+            if (word.charAt(i) == letter) {
+                positions |= 1L << i;
+            }
+        }
+        return positions;
+    }
+}
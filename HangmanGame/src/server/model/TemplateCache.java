@@ -0,0 +1,104 @@
+package server.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+/**
+ *  Bounded cache of the templates of dictionary words, keyed by the index of the word in the
+ * dictionary. Lookups only read a concurrent map, so popular words are handed out without
+ * building anything or taking a lock. Missing templates are built by the caller and added under
+ * a lock, evicting another template once 'capacity' templates are held.
+ *
+ * Templates are evicted in clock order: every template is on a ring and marked when it is used,
+ * the hand of the clock passes over marked templates once, clearing the mark, and evicts the
+ * first template that was not used since the hand last passed it. Popular words thereby stay
+ * cached as if least recently used templates were evicted, without ordering every lookup.
+ * Evicted templates stay valid for the games still using them.
+ */
+class TemplateCache {
+
+    private final int capacity;
+    private final ConcurrentHashMap<Integer, Entry> entries;
+    private final Entry[] ring;
+    private int hand;
+    private int size;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacity  the most templates held at once
+     */
+    TemplateCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new ConcurrentHashMap<>(capacity * 2);
+        this.ring = new Entry[capacity];
+    }
+    /**
+     * Hands out the template of a dictionary word, building it if it is not cached
+     * @param id    the index of the word in the dictionary
+     * @param word  the word
+     * @return      the template of the word
+     */
+    WordTemplate get(int id, String word) {
+        Entry entry = entries.get(id);
+        if (entry != null) {
+            if (!entry.used) {
+                entry.used = true;
+            }
+            hits.increment();
+            return entry.template;
+        }
+        misses.increment();
+        return add(id, new WordTemplate(word));
+    }
+    /**
+     * @return  the cache counters as a JSON object
+     */
+    String toJson() {
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+        return "{\"capacity\":" + capacity
+                + ",\"size\":" + entries.size()
+                + ",\"hits\":" + hitCount
+                + ",\"misses\":" + (lookups - hitCount)
+                + ",\"evictions\":" + evictions.sum()
+                + ",\"hitRate\":" + (lookups == 0 ? 0 : (double) hitCount / lookups) + "}";
+    }
+    /**
+     * Adds a template built after a miss, unless another thread added the word meanwhile
+     */
+    private synchronized WordTemplate add(int id, WordTemplate template) {
+        Entry cached = entries.get(id);
+        if (cached != null) {
+            return cached.template;
+        }
+        Entry entry = new Entry(id, template);
+        if (size < capacity) {
+            ring[size++] = entry;
+        } else {
+            while (ring[hand].used) {
+                ring[hand].used = false;
+                hand = (hand + 1) % capacity;
+            }
+            entries.remove(ring[hand].id);
+            evictions.increment();
+            ring[hand] = entry;
+            hand = (hand + 1) % capacity;
+        }
+        entries.put(id, entry);
+        return template;
+    }
+    /**
+     * A cached template, and whether it was used since the clock hand last passed it
+     */
+    private static class Entry {
+        private final int id;
+        private final WordTemplate template;
+        private volatile boolean used;
+
+        private Entry(int id, WordTemplate template) {
+            this.id = id;
+            this.template = template;
+        }
+    }
+}
@@ -1,11 +1,15 @@
 package server.model;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import server.log.ServerLog;
 
 /**
  *  WordLogic for handling everything to do with generating words, guessing words or letters
@@ -14,111 +18,139 @@ import java.util.ArrayList;
  */
 public class WordLogic {
     private final String WORDS_FILE = "resources/words.txt";
-    private ArrayList<String> words;
+    private final String DICTIONARY_FILE = "resources/words.dict";    // built from WORDS_FILE by DictionaryBuilder
+    private final Locale WORDS_LOCALE = Locale.ENGLISH;    // capitalized words of the list are proper nouns
+    private final int TEMPLATE_CACHE_SIZE = 8192;     // templates of the most played words kept
+    private final CompletableFuture<List<String>> words = new CompletableFuture<>();
+    private final TemplateCache templates = new TemplateCache(TEMPLATE_CACHE_SIZE);
     
+    /**
+     * Starts loading the words in the background, so the server can accept players
+     * while the words are loaded. Words are handed out once loading has completed.
+     */
     public WordLogic () {
-        indexWords(readFile(WORDS_FILE));
+        Thread loader = new Thread(() -> words.complete(indexWords(readFile(WORDS_FILE))), "dictionary-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+    /**
+     * @return  true once the words have been loaded
+     */
+    public boolean isReady() {
+        return words.isDone();
     }
     /**
-     * Attempts to read the specified file and return a buffered reader for it
+     * Runs an action once the words have been loaded, immediately if they already are
+     * @param action    the action to run
+     */
+    public void whenReady(Runnable action) {
+        words.thenRun(action);
+    }
+    /**
+     * Checks that the specified file exists and returns its path
      * @param path  the path where the file is to be found
-     * @return      the buffered reader
+     * @return      the path of the file
      */
-    private BufferedReader readFile(String path) {
-        try {
-            return new BufferedReader(new FileReader(new File(path)));
-        } catch (FileNotFoundException e) {
-            System.out.println("File not found: " + path);
+    private Path readFile(String path) {
+        Path file = Paths.get(path);
+        if (!Files.isRegularFile(file)) {
+            ServerLog.error("File not found", path);
+            ServerLog.flush();
             System.exit(1);
         }
-        return null;
+        return file;
     }
     /**
-     * Index all the words read from the BufferedReader into an arrayList
-     * @param reader the BufferedReader to read from
+     * Index all the words of the file into a list. The dictionary built from the file is
+     * loaded if it is up to date, otherwise the file is normalized and deduplicated by a
+     * 'DictionaryBuilder' while loading
+     * @param file the file to read from
+     * @return     the indexed words
      */
-    private void indexWords(BufferedReader reader) {
-        words = new ArrayList();
+    private List<String> indexWords(Path file) {
         try {
-            String word = reader.readLine();
-            while (word != null) {
-                words.add(word.toLowerCase());
-                word = reader.readLine();
+            Path dictionary = Paths.get(DICTIONARY_FILE);
+            if (Files.isRegularFile(dictionary)
+                    && Files.getLastModifiedTime(dictionary).compareTo(Files.getLastModifiedTime(file)) >= 0) {
+                return DictionaryFile.read(dictionary);
+            } else {
+                DictionaryBuilder builder = new DictionaryBuilder(WORDS_LOCALE, true);
+                List<String> words = builder.build(Collections.singletonList(file));
+                ServerLog.info("Built dictionary", builder.getReport());
+                return words;
             }
         } catch (IOException ex) {
-           ex.printStackTrace();
+           ServerLog.error("Error when indexing words", ex);
+           return new ArrayList<>();
         }
     }
     /**
-     * Generate a random index number and return the word at the index
-     * @return a randomized word from the list of words found in the defined WordFile path
+     * Generate a random index number and return the cached template of the word at the index,
+     * waiting for the words to be loaded if they are not yet
+     * @return the template of a randomized word from the list of words found in the defined WordFile path
      */
-    public String getWord() {
-        int index = (int) (Math.random() * words.size());
-        return words.get(index);
+    public WordTemplate getTemplate() {
+        List<String> loaded = words.join();
+        int index = (int) (Math.random() * loaded.size());
+        return templates.get(index, loaded.get(index));
     }
     /**
-     * Replaces dashes in the hidden word with the guessed letter
-     * @param letter    the letter to be inserted into the hidden word
-     * @param word      the word to be guessed
-     * @param current   the current hidden word
-     * @return          the updated hidden word
+     * Builds the template of a word that was not picked from the dictionary, for example
+     * a word restored from a snapshot. The template is not cached.
+     * @param word  the word
+     * @return      the template of the word
      */
-    private String replaceAll(char letter, String word, String current) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < word.length(); i++) {
-            char c = word.charAt(i);
-            if (c == letter) {
-                sb.append(c);
-            } else {
-                sb.append(current.charAt(i));
-            }
-        }
-        return sb.toString();
+    public WordTemplate templateOf(String word) {
+        return new WordTemplate(word);
     }
     /**
-     * Checks if the word to be guessed contains the guessed char. If so,
-     * replace all dashes from the hidden word where the letter is found in
-     * the word to be guessed.
-     * @param word      the word to be guessed by the user
-     * @param guess     the guessed character
-     * @param hidden    the current hidden word
-     * @return          the updated hidden word
+     * @return  the counters of the template cache as a JSON object
      */
-    private String guessChar(String word, String guess, String hidden) {
-        String newHidden = hidden;
-        if (word.contains(guess)) {
-            newHidden = replaceAll(guess.charAt(0), word, hidden);
-        }
-        return newHidden;
+    public String templateCacheJson() {
+        return templates.toJson();
     }
     /**
-     * Checks if the users guess of the complete word is correct
-     * @param word      the word to be guessed
-     * @param guess     the users guess
-     * @param hidden    the current hidden word
-     * @return          the hidden word or the correctly guessed word
+     * Called by controller to process a user guess in a game of a template, looking up the
+     * positions of a guessed letter instead of scanning the word
+     * @param guess     the users guess, a single letter or a word as long as the word to be guessed
+     * @param template  the template of the word to be guessed
+     * @param revealed  the letters shown so far, bit i set if letter i is shown
+     * @return          the letters shown after the guess
      */
-    private String guessWord(String word, String guess, String hidden) {
-        if (word.equals(guess)) 
-                return word;
-        /*else*/return hidden;
+    public long processGuess(String guess, WordTemplate template, long revealed) {
+        String guess1 = guess.toLowerCase();
+        if (guess1.length() == 1) {
+            return revealed | template.positions(guess1.charAt(0));
+        } else if (guess1.equals(template.getWord())) {
+            return template.getComplete();
+        } else {
+            return revealed;
+        }
     }
     /**
-     * Called by controller to process a user guess
-     * @param guess     the users guess
-     * @param word      the word to be guessed
-     * @param hidden    the current hidden word
-     * @return          the updated hidden word
+     * Processes many letter guesses at once, for example every guess read by one event loop pass.
+     * Guess i is the letter 'letters[i]' in 'words[i]', where the letters shown so far are
+     * 'revealed[i]' (bit j set if letter j is shown). The positions of the guessed letter are
+     * added to 'revealed[i]'. Packed words are compared eight letters at a time by the
+     * 'LetterMatcher', words without a packed form one letter at a time.
+     * @param words     the words to be guessed
+     * @param packed    the words packed by 'LetterMatcher.pack', or null entries for unpacked words
+     * @param letters   the guessed letters
+     * @param revealed  the letters shown of every word, updated in place
+     * @param count     the number of guesses
+     * @return          the number of guesses that showed at least one new letter
      */
-    public String processGuess(String guess, String word, String hidden) {
-        String guess1 = guess.toLowerCase();
-        if (guess.length() == 1) {
-            return guessChar(word, guess1, hidden);
-        } else if (guess.length() == word.length()) {
-            return guessWord(word, guess1, hidden);
-        } else {
-            return null;
-        } 
+    public int processLetters(String[] words, long[][] packed, char[] letters, long[] revealed, int count) {
+        int succesful = 0;
+        for (int i = 0; i < count; i++) {
+            char letter = Character.toLowerCase(letters[i]);
+            long positions = packed[i] != null ? LetterMatcher.positions(packed[i], letter)
+                                               : LetterMatcher.positions(words[i], letter);
+            if ((positions & ~revealed[i]) != 0) {
+                succesful++;
+            }
+            revealed[i] |= positions;
+        }
+        return succesful;
     }
 }
@@ -0,0 +1,120 @@
+package server.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+/**
+ *  Statistics aggregated from the game events as they are logged, so they can be queried
+ * at any time without reading the log. Updated by the single 'GameEventLog' writer thread
+ * and read by any thread.
+ */
+public class WordStatistics {
+
+    private static final int LETTERS = 'z' - 'a' + 1;
+
+    private final ConcurrentHashMap<String, WordStats> words = new ConcurrentHashMap<>();
+    private final AtomicLongArray letterGuesses = new AtomicLongArray(LETTERS);
+    private final AtomicLongArray letterHits = new AtomicLongArray(LETTERS);
+
+    /**
+     * Adds a logged event to the statistics
+     * @param event the event
+     */
+    void accept(GameEvent event) {
+        switch (event.type) {
+            case START:
+                stats(event.word).games++;
+                break;
+            case GUESS:
+                if (event.guess.length() == 1) {
+                    int letter = event.guess.charAt(0) - 'a';
+                    if (letter >= 0 && letter < LETTERS) {
+                        letterGuesses.incrementAndGet(letter);
+                        if (event.hit) {
+                            letterHits.incrementAndGet(letter);
+                        }
+                    }
+                }
+                break;
+            case WIN:
+            case LOSS:
+                WordStats stats = stats(event.word);
+                if (event.type == GameEvent.Type.WIN) {
+                    stats.wins++;
+                } else {
+                    stats.losses++;
+                }
+                stats.misses += event.misses;
+                stats.duration += event.duration;
+                break;
+        }
+    }
+    private WordStats stats(String word) {
+        return words.computeIfAbsent(word, w -> new WordStats());
+    }
+    /**
+     * @param word  the word to get the statistics of
+     * @return      the statistics of the word, or null if the word has not been played
+     */
+    public WordStats get(String word) {
+        return words.get(word);
+    }
+    /**
+     * @param letter    a letter between 'a' and 'z'
+     * @return          the share of guesses for the letter that were correct, 0 if never guessed
+     */
+    public double letterHitRate(char letter) {
+        long guesses = letterGuesses(letter);
+        return guesses == 0 ? 0 : (double) letterHits.get(letter - 'a') / guesses;
+    }
+    /**
+     * @param letter    a letter between 'a' and 'z'
+     * @return          the number of times the letter has been guessed
+     */
+    public long letterGuesses(char letter) {
+        if (letter < 'a' || letter > 'z') {
+            return 0;
+        }
+        return letterGuesses.get(letter - 'a');
+    }
+    /**
+     * Statistics of a single word
+     */
+    public static class WordStats {
+        private volatile long games;
+        private volatile long wins;
+        private volatile long losses;
+        private volatile long misses;
+        private volatile long duration;
+
+        public long getGames() {
+            return games;
+        }
+        public long getWins() {
+            return wins;
+        }
+        public long getLosses() {
+            return losses;
+        }
+        /**
+         * @return  the share of finished games that were won
+         */
+        public double getWinRate() {
+            long finished = wins + losses;
+            return finished == 0 ? 0 : (double) wins / finished;
+        }
+        /**
+         * @return  the average number of incorrect guesses in finished games
+         */
+        public double getAverageMisses() {
+            long finished = wins + losses;
+            return finished == 0 ? 0 : (double) misses / finished;
+        }
+        /**
+         * @return  the average duration of finished games, in milliseconds
+         */
+        public double getAverageDuration() {
+            long finished = wins + losses;
+            return finished == 0 ? 0 : (double) duration / finished;
+        }
+    }
+}
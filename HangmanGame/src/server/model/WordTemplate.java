@@ -0,0 +1,96 @@
+package server.model;
+
+import java.util.Arrays;
+/**
+ *  Everything about a word that stays the same from game to game, computed once and shared by
+ * every game of the word: the word masked as shown when a game starts, the positions of every
+ * letter, the number of distinct letters and the word packed for the 'LetterMatcher'.
+ * Templates are immutable and safe to share between threads, the templates of dictionary words
+ * are handed out by the 'TemplateCache' of 'WordLogic'.
+ */
+public final class WordTemplate {
+
+    private final String word;
+    private final String masked;
+    private final long[] positions = new long[26];     // bit i set if letter i of the word is the letter, a-z
+    private final long complete;                        // every letter of the word shown
+    private final int distinctLetters;
+    private final long[] packed;                        // null if the word is not ASCII or too long to pack
+
+    /**
+     * @param word  the word, at most 'DictionaryBuilder.MAX_WORD_LENGTH' letters
+     */
+    WordTemplate(String word) {
+        this.word = word;
+        char[] dashes = new char[word.length()];
+        Arrays.fill(dashes, '-');
+        this.masked = new String(dashes);
+        this.complete = -1L >>> (64 - word.length());
+        int letters = 0;
+        int others = 0;
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (c >= 'a' && c <= 'z') {
+                letters |= 1 << (c - 'a');
+                positions[c - 'a'] |= 1L << i;
+            } else if (word.indexOf(c) == i) {
+                others++;
+            }
+        }
+        this.distinctLetters = Integer.bitCount(letters) + others;
+        this.packed = LetterMatcher.pack(word);
+    }
+    /**
+     * @return  the word
+     */
+    public String getWord() {
+        return word;
+    }
+    /**
+     * @return  the word with a dash for every letter, as shown when a game starts
+     */
+    public String getMasked() {
+        return masked;
+    }
+    /**
+     * @return  the number of letters of the word
+     */
+    public int length() {
+        return word.length();
+    }
+    /**
+     * @return  the number of different letters of the word, the most correct letter guesses a game can take
+     */
+    public int getDistinctLetters() {
+        return distinctLetters;
+    }
+    /**
+     * @return  the letters shown when the word is completed, bit i for letter i
+     */
+    public long getComplete() {
+        return complete;
+    }
+    /**
+     * @param letter    a lower case letter
+     * @return          the positions of the letter in the word, bit i set if letter i is the letter
+     */
+    public long positions(char letter) {
+        if (letter >= 'a' && letter <= 'z') {
+            return positions[letter - 'a'];
+        }
+        return LetterMatcher.positions(word, letter);
+    }
+    /**
+     * @param guess     a guess
+     * @return          true if the guess is a single letter or as long as the word, else it can not be evaluated
+     */
+    public boolean fits(String guess) {
+        return guess.length() == 1 || guess.length() == word.length();
+    }
+    /**
+     * @return  the word packed by 'LetterMatcher.pack', or null, must not be modified
+     */
+    long[] getPacked() {
+        return packed;
+    }
+}
@@ -0,0 +1,148 @@
+package server.net;
+
+import java.util.concurrent.atomic.LongAdder;
+/**
+ *  Flags sessions that guess like a script, judged online from every guess in constant memory.
+ * Three signals are watched:
+ *  fast, steady timing     an average of the time between guesses of the session below
+ *                          'FAST_INTERVAL' that hardly varies, kept as moving averages in the slot
+ *  ordered guesses         'ORDERED_GUESSES' letters of a game guessed in alphabetical or
+ *                          letter frequency order, as when iterating a fixed list of letters
+ *  common opening          the first 'OPENING_LENGTH' guesses of a game shared with more than
+ *                          'COMMON_OPENING' other games, counted by a 'CountMinSketch'
+ * A session with fast, steady timing that also shows one of the other signals is a suspect for
+ * the rest of its life, and its guesses are throttled to one per 'SUSPECT_INTERVAL'. Timing is
+ * required, as people also open with the most frequent letters in order. How varied the openings of all
+ * games are is estimated by a 'HyperLogLog'.
+ *
+ * Every guess only updates the slot of its session, the sketches are updated once per game.
+ */
+class BotDetector {
+
+    static final String SLOW_DOWN = "Guessing too fast, wait a moment before your next guess";
+
+    private static final String FREQUENCY_ORDER = "etaoinshrdlcumwfgypbvkjxqz";    // letters by frequency in English
+    private static final byte[] FREQUENCY_RANK = new byte[26];
+
+    private final float INTERVAL_WEIGHT  = 0.2f;        // weight of the latest time between guesses in the averages
+    private final int   MIN_GUESSES      = 10;          // guesses of a session before its timing is judged
+    private final float FAST_INTERVAL    = 300;         // average millis between guesses below which guessing is fast
+    private final float STEADY_DEVIATION = 0.15f;       // deviation, relative to the average, below which timing is steady
+    private final int   ORDERED_GUESSES  = 6;           // letters of a game in order before the game counts as ordered
+    private final int   OPENING_LENGTH   = 5;           // letters hashed as the opening of a game
+    private final int   COMMON_OPENING   = 100;         // games with the same opening before it counts as common
+    private final long  SUSPECT_INTERVAL = 1000;        // min millis between guesses of a suspect session
+
+    private final CountMinSketch openings = new CountMinSketch(4, 12);
+    private final HyperLogLog distinctOpenings = new HyperLogLog(12);
+    private final LongAdder guesses = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder suspects = new LongAdder();
+    private final LongAdder games = new LongAdder();
+    private final LongAdder orderedGames = new LongAdder();
+    private final LongAdder commonGames = new LongAdder();
+
+    static {
+        for (int i = 0; i < FREQUENCY_ORDER.length(); i++) {
+            FREQUENCY_RANK[FREQUENCY_ORDER.charAt(i) - 'a'] = (byte) i;
+        }
+    }
+    /**
+     * Judges a guess of a session before it is evaluated, called while holding the lock of the session
+     * @param store     the store holding the slot of the session
+     * @param slot      the slot of the session
+     * @param guess     the guess
+     * @param now       'System.nanoTime' when the guess was received
+     * @return          false if the guess should be rejected with 'SLOW_DOWN'
+     */
+    boolean admit(SessionStore store, int slot, String guess, long now) {
+        guesses.increment();
+        float interval = (now - store.getLastGuess(slot)) / 1e6f;
+        if (store.isSet(slot, SessionStore.SUSPECT) && interval < SUSPECT_INTERVAL) {
+            throttled.increment();
+            return false;
+        }
+        store.setLastGuess(slot, now);     // only admitted guesses, so retries do not restart the wait
+        int sessionGuesses = store.getSessionGuesses(slot) + 1;
+        store.setSessionGuesses(slot, sessionGuesses);
+        if (sessionGuesses > 1) {
+            float average = store.getInterval(slot);
+            if (sessionGuesses == 2) {
+                average = interval;
+            }
+            float deviation = store.getDeviation(slot);
+            deviation += INTERVAL_WEIGHT * (Math.abs(interval - average) - deviation);
+            average += INTERVAL_WEIGHT * (interval - average);
+            store.setInterval(slot, average);
+            store.setDeviation(slot, deviation);
+        }
+        if (guess.length() != 1 || guess.charAt(0) < 'a' || guess.charAt(0) > 'z') {
+            return true;
+        }
+        int letter = guess.charAt(0) - 'a';
+        int gameGuesses = store.getGameGuesses(slot) + 1;
+        store.setGameGuesses(slot, gameGuesses);
+        ordered(store, slot, letter);
+        if (gameGuesses <= OPENING_LENGTH) {
+            int opening = store.getOpening(slot) * 31 + letter + 1;
+            store.setOpening(slot, opening);
+            if (gameGuesses == OPENING_LENGTH) {
+                opening(store, slot, opening);
+            }
+        }
+        boolean scripted = store.isSet(slot, SessionStore.ORDERED) || store.isSet(slot, SessionStore.COMMON_OPENING);
+        boolean mechanical = sessionGuesses >= MIN_GUESSES && store.getInterval(slot) < FAST_INTERVAL
+                && store.getDeviation(slot) < STEADY_DEVIATION * store.getInterval(slot);
+        if (mechanical && scripted && !store.isSet(slot, SessionStore.SUSPECT)) {
+            store.setFlag(slot, SessionStore.SUSPECT, true);
+            suspects.increment();
+        }
+        return true;
+    }
+    /**
+     * @return  the detection counters as a JSON object
+     */
+    String toJson() {
+        return "{\"guesses\":" + guesses.sum()
+                + ",\"throttled\":" + throttled.sum()
+                + ",\"suspects\":" + suspects.sum()
+                + ",\"games\":" + games.sum()
+                + ",\"distinctOpenings\":" + distinctOpenings.estimate()
+                + ",\"orderedGames\":" + orderedGames.sum()
+                + ",\"commonOpeningGames\":" + commonGames.sum() + "}";
+    }
+    /**
+     * Tracks how many letters of the game in a row were guessed in alphabetical order (low four bits
+     * of the counter) and in frequency order (high four bits), and marks the game once it is ordered
+     */
+    private void ordered(SessionStore store, int slot, int letter) {
+        int previous = store.getLastLetter(slot) - 1;
+        store.setLastLetter(slot, letter + 1);
+        int inOrder = store.getInOrder(slot);
+        int alphabetical = inOrder & 0xF;
+        int frequency = inOrder >>> 4;
+        if (previous < 0) {
+            alphabetical = 1;
+            frequency = 1;
+        } else {
+            alphabetical = letter > previous ? Math.min(alphabetical + 1, 0xF) : 1;
+            frequency = FREQUENCY_RANK[letter] > FREQUENCY_RANK[previous] ? Math.min(frequency + 1, 0xF) : 1;
+        }
+        store.setInOrder(slot, alphabetical | (frequency << 4));
+        if ((alphabetical >= ORDERED_GUESSES || frequency >= ORDERED_GUESSES) && !store.isSet(slot, SessionStore.ORDERED)) {
+            store.setFlag(slot, SessionStore.ORDERED, true);
+            orderedGames.increment();
+        }
+    }
+    /**
+     * Counts the opening of a game, and marks the game if the opening is common
+     */
+    private void opening(SessionStore store, int slot, int opening) {
+        games.increment();
+        distinctOpenings.add(opening);
+        if (openings.add(opening) > COMMON_OPENING) {
+            store.setFlag(slot, SessionStore.COMMON_OPENING, true);
+            commonGames.increment();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package server.net;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+/**
+ *  Pool of equally sized direct byte buffers, reused between connections
+ * to avoid allocating (and later collecting) a new buffer for every connection.
+ * The pool never holds more than 'maxPooled' buffers, extra buffers are left to the GC.
+ */
+class BufferPool {
+
+    private final ConcurrentLinkedQueue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+    private final int bufferSize;
+    private final int maxPooled;
+
+    BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+    /**
+     * Takes a cleared buffer from the pool, or allocates a new one if the pool is empty
+     * @return  a buffer of 'bufferSize' bytes, ready to be written to
+     */
+    ByteBuffer take() {
+        ByteBuffer buffer = pool.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        pooled.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+    /**
+     * Returns a buffer to the pool. The buffer must not be used after being released.
+     * @param buffer    the buffer to return, ignored if null
+     */
+    void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.capacity() != bufferSize) {
+            return;
+        }
+        if (pooled.incrementAndGet() <= maxPooled) {
+            pool.offer(buffer);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+    /**
+     * @return  the size of the buffers handed out by this pool
+     */
+    int bufferSize() {
+        return bufferSize;
+    }
+}
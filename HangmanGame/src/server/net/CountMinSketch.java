@@ -0,0 +1,44 @@
+package server.net;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+/**
+ *  Estimates how often each of an unbounded number of keys has been seen, in constant memory.
+ * Every key increments one counter in each of 'depth' rows, picked by a different hash per row,
+ * and its count is estimated by the smallest of its counters. Estimates are never too low, and
+ * too high by at most a small share of all counts added. Safe to use from any thread.
+ */
+class CountMinSketch {
+
+    private final int depth;
+    private final int mask;
+    private final AtomicIntegerArray counters;
+
+    /**
+     * @param depth     number of rows, more rows make a too high estimate less likely
+     * @param widthBits log2 of the counters per row, wider rows make estimates more exact
+     */
+    CountMinSketch(int depth, int widthBits) {
+        this.depth = depth;
+        this.mask = (1 << widthBits) - 1;
+        this.counters = new AtomicIntegerArray(depth << widthBits);
+    }
+    /**
+     * Counts a key
+     * @param hash  hash of the key
+     * @return      the estimated count of the key, including this one
+     */
+    int add(int hash) {
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.incrementAndGet(index(hash, row)));
+        }
+        return estimate;
+    }
+    private int index(int hash, int row) {
+        int h = (hash ^ (row * 0x9E3779B9)) * 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return (row * (mask + 1)) + (h & mask);
+    }
+}
@@ -0,0 +1,92 @@
+package server.net;
+
+import server.controller.ServerController;
+import server.log.ServerLog;
+/**
+ *  Keeps time for the timed game modes. Every deadline of every game, as well as the
+ * start and end of the scheduled tournaments, is held by one 'TimingWheel', so timed
+ * games need neither a thread nor a scheduled executor task of their own.
+ */
+class GameClock {
+
+    private final long  TICK                = 10;           // resolution of the deadlines in milliseconds
+    private final long  TOURNAMENT_INTERVAL = 60000;        // time between the start of two tournaments
+    private final long  TOURNAMENT_ROUND    = 120000;       // time limit of a tournament round
+    private final long  TOURNAMENT_GUESS    = 15000;        // time limit of every guess in a tournament
+
+    private final ServerController contr;
+    private final TimingWheel wheel = new TimingWheel(TICK);
+    private Tournament next;
+    private long nextStart;
+
+    GameClock(ServerController controller) {
+        this.contr = controller;
+    }
+    /**
+     * Starts the wheel and schedules the first tournament
+     */
+    void start() {
+        wheel.start();
+        scheduleTournament(1);
+    }
+    /**
+     * Runs a task once the delay has passed, on the wheel thread
+     * @param delayMillis   time until the task is run
+     * @param task          the task, which must not block
+     * @return              the deadline, which can be cancelled with 'cancel'
+     */
+    TimingWheel.Timeout schedule(long delayMillis, Runnable task) {
+        return wheel.schedule(delayMillis, task);
+    }
+    /**
+     * @param timeout   a deadline returned by 'schedule', or null
+     */
+    void cancel(TimingWheel.Timeout timeout) {
+        wheel.cancel(timeout);
+    }
+    /**
+     * @return  the number of pending deadlines
+     */
+    int pending() {
+        return wheel.pending();
+    }
+    /**
+     * Adds a player to the next tournament
+     * @param session   the session of the player
+     * @return          a response telling the player when the tournament starts
+     */
+    synchronized String join(GameSession session) {
+        if (next == null) {
+            return "No tournament is scheduled";
+        }
+        next.join(session);
+        long seconds = Math.max(0, (nextStart - System.currentTimeMillis()) / 1000);
+        return "Joined tournament " + next.getNumber() + ", starting in " + seconds + " seconds. "
+                + "The round lasts " + TOURNAMENT_ROUND / 1000 + " seconds with " + TOURNAMENT_GUESS / 1000 + " seconds per guess";
+    }
+    private synchronized void scheduleTournament(int number) {
+        next = new Tournament(number);
+        nextStart = System.currentTimeMillis() + TOURNAMENT_INTERVAL;
+        Tournament tournament = next;
+        wheel.schedule(TOURNAMENT_INTERVAL, () -> startTournament(tournament));
+    }
+    /**
+     * Starts every game of a tournament on the wheel thread and schedules the next tournament.
+     * If the dictionary is still loading, the tournament is postponed instead.
+     */
+    private void startTournament(Tournament tournament) {
+        if (!contr.isReady()) {
+            synchronized (this) {
+                nextStart = System.currentTimeMillis() + TOURNAMENT_INTERVAL;
+            }
+            wheel.schedule(TOURNAMENT_INTERVAL, () -> startTournament(tournament));
+            return;
+        }
+        scheduleTournament(tournament.getNumber() + 1);
+        int players = tournament.start(contr.getTemplate(), TOURNAMENT_ROUND, TOURNAMENT_GUESS);
+        if (players > 0) {
+            ServerLog.info("Started tournament", tournament.getNumber() + " with " + players + " players");
+            wheel.schedule(TOURNAMENT_ROUND + TICK, tournament::finish);
+        }
+    }
+}
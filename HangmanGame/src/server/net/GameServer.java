@@ -4,7 +4,20 @@ import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import server.controller.GameTrace;
 import server.controller.ServerController;
+import server.controller.StartupClock;
+import server.log.ServerLog;
+import common.Constants;
+import common.ServerMessageTypes;
+import common.UnixSockets;
 /**
  *  Server for handling new connections for new players
  * @author Perttu Jääskeläinen
@@ -12,47 +25,202 @@ import server.controller.ServerController;
 public class GameServer {
     
     private int         PORT_NO         = 8080;         // default port number
+    private int         HTTP_PORT_NO    = 8081;         // default port number of the HTTP/WebSocket gateway
     private final int   LINGER_TIME     = 30000;        // linger time when closing socket
     private final int   SOCKET_TIMEOUT  = 1800000;      // time before timing out a connection
+    private final String SNAPSHOT_FILE  = "state/sessions.snapshot";   // sessions saved when draining the server
     private final ServerController contr = new ServerController();
+    private final SessionRegistry registry = new SessionRegistry();
+    private final GameClock clock = new GameClock(contr);
+    private final Matchmaker matchmaker = new Matchmaker(contr, clock);
+    private Throttle.OverflowPolicy overflowPolicy = Throttle.OverflowPolicy.PAUSE;   // default when a player stops reading
+    private Throttle throttle;
+    private TrafficCapture capture;
+    private ServerSocket server;
+    private ServerSocketChannel unixServer;
+    private volatile boolean draining;
     
     public static void main (String[] args) {
         GameServer server = new GameServer();
+        if (Boolean.getBoolean("hangman.trainingRun")) {
+            server.trainingRun();
+            return;
+        }
         server.parseArgs(args);
         server.serve();
     }
+    /**
+     * Plays one game without opening any sockets and exits, used by the build to record
+     * the classes loaded at startup into a class data sharing archive
+     */
+    private void trainingRun() {
+        GameSession session = new GameSession(contr, clock, matchmaker);
+        List<String> responses = new ArrayList<>();
+        session.process(ServerMessageTypes.NEWWORD.toString(), responses);
+        for (char c = 'a'; c <= 'z' && session.isPlaying(); c++) {
+            session.process(ServerMessageTypes.GUESS + Constants.DELIMETER + c, responses);
+        }
+        System.exit(0);
+    }
     /**
      * The main thread spends its lifetime here, accepting new connections and 
-     * assigning them a seperate PlayerHandler thread
+     * assigning them a seperate PlayerHandler thread. The HTTP/WebSocket gateway
+     * is started on its own thread, sharing the controller with socket players.
+     * Sessions saved when the server was last drained are restored before accepting players,
+     * and the server is drained when the JVM shuts down. Players are accepted while the words
+     * are still loading, games are started as soon as the words are loaded.
+     * The game clock, timing timed games and tournaments, is started first.
+     * The traffic of socket players is captured if the server was started with -Dhangman.capture=FILE.
+     * Players on the same host may also connect to a unix domain socket, if the server was started
+     * with -Dhangman.unixSocket=FILE.
      */
     private void serve() {
+        throttle = new Throttle(overflowPolicy);
+        startCapture();
+        clock.start();
+        restoreSessions();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::drain));
+        new Thread(new HttpGateway(contr, throttle, registry, clock, matchmaker, HTTP_PORT_NO)).start();
+        startUnixListener();
         try {
-            ServerSocket server = new ServerSocket(PORT_NO);
+            server = new ServerSocket(PORT_NO);
+            StartupClock.reached("accepting players");
             while (true) {
                 Socket playerSocket = server.accept();
+                StartupClock.reached("first player accepted");
                 startGame(playerSocket);
             }
         } catch (IOException e) {
-            System.out.println("Error when creating server socket with port: " + PORT_NO);
+            if (!draining) {
+                ServerLog.error("Error when creating server socket with port", PORT_NO + ": " + e.getMessage());
+            }
         }    
     }
+    /**
+     * Starts capturing the traffic of socket players to the file named by -Dhangman.capture, if set
+     */
+    private void startCapture() {
+        String file = System.getProperty("hangman.capture");
+        if (file == null) {
+            return;
+        }
+        try {
+            capture = new TrafficCapture(Paths.get(file));
+            ServerLog.info("Capturing player traffic", file);
+        } catch (IOException e) {
+            ServerLog.error("Error when creating traffic capture", e);
+        }
+    }
+    /**
+     * Starts accepting players on the unix domain socket named by -Dhangman.unixSocket, if set.
+     * The players play the same protocol as over TCP, on a thread of their own
+     */
+    private void startUnixListener() {
+        String file = System.getProperty("hangman.unixSocket");
+        if (file == null) {
+            return;
+        }
+        Path path = Paths.get(file);
+        try {
+            unixServer = UnixSockets.listen(path);
+            path.toFile().deleteOnExit();
+        } catch (IOException | UnsupportedOperationException e) {
+            ServerLog.error("Error when creating unix domain socket", file + ": " + e.getMessage());
+            return;
+        }
+        Thread listener = new Thread(() -> {
+            try {
+                while (true) {
+                    startGame(unixServer.accept());
+                }
+            } catch (IOException e) {
+                if (!draining) {
+                    ServerLog.error("Error when accepting players on unix domain socket", e);
+                }
+            }
+        }, "unix-listener");
+        listener.setDaemon(true);
+        listener.start();
+        ServerLog.info("Accepting players on unix domain socket", file);
+    }
+    /**
+     * Restores the sessions saved to the snapshot file, if there is one
+     */
+    private void restoreSessions() {
+        Path snapshot = Paths.get(SNAPSHOT_FILE);
+        if (!Files.isRegularFile(snapshot)) {
+            return;
+        }
+        try {
+            registry.restore(snapshot, contr, clock, matchmaker);
+        } catch (IOException e) {
+            ServerLog.error("Error when restoring sessions", e);
+        }
+    }
+    /**
+     * Drains the server before it shuts down: stops accepting players and saves every
+     * session to the snapshot file, so players can resume their games after a restart
+     */
+    private void drain() {
+        draining = true;
+        try {
+            if (server != null) {
+                server.close();
+            }
+            if (unixServer != null) {
+                unixServer.close();
+            }
+            ServerLog.info("Stopped accepting players");
+            Path snapshot = Paths.get(SNAPSHOT_FILE);
+            Files.createDirectories(snapshot.getParent());
+            registry.save(snapshot);
+        } catch (IOException e) {
+            ServerLog.error("Error when saving sessions", e);
+        }
+        ServerLog.flush();
+    }
     /**
      * Method to handle creation of a new thread for a user with a reference to the controller,
-     * to avoid redundant instances of opening and indexing the same wordfile for each user
+     * to avoid redundant instances of opening and indexing the same wordfile for each user.
+     * Traced as a 'GameTrace.Accept' event
      * @param player    the playersocket the thread will communicate with
      * @throws SocketException  if assigning values to the socket linger and/or timeout fails
      */
     private void startGame(Socket player) throws SocketException  {
+        GameTrace.Accept event = new GameTrace.Accept();
+        event.begin();
         player.setSoLinger(true, LINGER_TIME);
         player.setSoTimeout(SOCKET_TIMEOUT);
-        PlayerHandler handler = new PlayerHandler(contr, player);
+        PlayerHandler handler = new PlayerHandler(contr, throttle, registry, clock, matchmaker, capture, player);
+        startHandler(handler, event, player.getRemoteSocketAddress());
+    }
+    /**
+     * Starts a player connected to the unix domain socket, like 'startGame' for a TCP socket.
+     * Unix domain channels have neither linger nor a read timeout, and their peers no address
+     * @param player    the channel of the player, in blocking mode
+     */
+    private void startGame(SocketChannel player) {
+        GameTrace.Accept event = new GameTrace.Accept();
+        event.begin();
+        PlayerHandler handler = new PlayerHandler(contr, throttle, registry, clock, matchmaker, capture, player);
+        startHandler(handler, event, UnixSockets.PREFIX + System.getProperty("hangman.unixSocket"));
+    }
+    private void startHandler(PlayerHandler handler, GameTrace.Accept event, Object remoteAddress) {
         Thread playerThread = new Thread(handler);
         playerThread.setPriority(Thread.MAX_PRIORITY);
-        playerThread.run();
+        playerThread.start();
+        event.end();
+        if (event.shouldCommit()) {
+            event.sessionId = handler.getSessionId();
+            event.remoteAddress = String.valueOf(remoteAddress);
+            event.commit();
+        }
     }
     /**
      * Used to parse arguments received when compiling the server - if a port number is not specified,
-     * use the default portnumber defined in this class
+     * use the default portnumber defined in this class. The second argument is the port
+     * number of the HTTP/WebSocket gateway, and the third the policy used when a player stops
+     * reading responses (DROP, DISCONNECT or PAUSE).
      * @param args  arguments received when compiling the server
      */
     public void parseArgs(String[] args) {
@@ -60,7 +228,21 @@ public class GameServer {
             try {
                 PORT_NO = Integer.parseInt(args[0]);
             } catch (NumberFormatException e) {
-                System.out.println("Error when parsing Portnumber, using default value: " + PORT_NO);
+                ServerLog.warn("Error when parsing Portnumber, using default value", String.valueOf(PORT_NO));
+            }
+        }
+        if (args.length > 1) {
+            try {
+                HTTP_PORT_NO = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                ServerLog.warn("Error when parsing HTTP Portnumber, using default value", String.valueOf(HTTP_PORT_NO));
+            }
+        }
+        if (args.length > 2) {
+            try {
+                overflowPolicy = Throttle.OverflowPolicy.valueOf(args[2].toUpperCase());
+            } catch (IllegalArgumentException e) {
+                ServerLog.warn("Error when parsing overflow policy, using default value", String.valueOf(overflowPolicy));
             }
         }
     }
@@ -0,0 +1,820 @@
+package server.net;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import server.controller.ServerController;
+import server.model.GameEvent;
+import server.model.WordTemplate;
+import common.Constants;
+/**
+ *  Holds the state of one players hangman game, independent of how the player
+ * is connected to the server. Used by the socket based 'PlayerHandler' as well
+ * as the HTTP/WebSocket gateway, so every transport plays by the same rules.
+ * A session should only be played by one thread at a time, but may be saved
+ * to a snapshot by another thread while it is played.
+ *
+ * In timed mode, every guess and every round has a deadline kept by the 'GameClock'.
+ * Responses caused by an expired deadline or a tournament are pushed: they are kept
+ * until the transport takes them with 'takePending', after being told by its listener.
+ *
+ * The game state itself (word, revealed letters, tries, score, guessed letters and time limits)
+ * is kept in a slot of the off-heap 'SessionStore', so idle sessions hold no strings or lists
+ * on the heap. The slot is returned to the store once the session is closed.
+ */
+public class GameSession {
+
+    static final String RESTARTING = "The server is restarting, reconnect to resume your game";
+
+    private static final AtomicLong NEXT_ID = new AtomicLong(1);
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final int MAX_LIMIT = 3600;      // longest time limit in seconds
+    private static final SessionStore STORE = new SessionStore();
+    private static final BotDetector DETECTOR = new BotDetector();
+
+    private final long id;
+    private final long secret;
+    private final ServerController contr;
+    private final GameClock clock;
+    private final Matchmaker matchmaker;
+    private final int slot;             // the game state, kept in the off-heap 'STORE'
+    private WordTemplate template;      // the word of the current game, shared with every game of the word
+    private List<String> pending;
+    private List<String> otherGuesses;  // guesses that are not a single letter a-z
+    private boolean saved;
+    private boolean closed;
+    private long gameGuessLimit;        // time limits of the current game
+    private long gameRoundLimit;
+    private TimingWheel.Timeout guessDeadline;
+    private TimingWheel.Timeout roundDeadline;
+    private int deadlines;              // number of the latest scheduled deadline
+    private int guessNumber;            // numbers of the current deadlines, so replaced deadlines are ignored
+    private int roundNumber;
+    private Tournament tournament;
+    private Match match;
+    private Matchmaker.Ticket ticket;
+    private Runnable listener;
+
+    public GameSession(ServerController controller, GameClock clock, Matchmaker matchmaker) {
+        this(controller, clock, matchmaker, NEXT_ID.getAndIncrement(), RANDOM.nextLong());
+    }
+
+    private GameSession(ServerController controller, GameClock clock, Matchmaker matchmaker, long id, long secret) {
+        this.contr = controller;
+        this.clock = clock;
+        this.matchmaker = matchmaker;
+        this.id = id;
+        this.secret = secret;
+        this.slot = STORE.allocate();
+    }
+    /**
+     * @return  the id identifying this session in logs and statistics
+     */
+    public long getId() {
+        return id;
+    }
+    /**
+     * @return  the token a player uses to resume this session after a server restart
+     */
+    public String getToken() {
+        return id + ":" + secret;
+    }
+    /**
+     * @param secret    the secret part of a resume token
+     * @return          true if the secret belongs to this session
+     */
+    boolean hasSecret(long secret) {
+        return this.secret == secret;
+    }
+    /**
+     * returns true if a game is currently in progress
+     * @return  true or false depending on if the user is playing
+     */
+    public synchronized boolean isPlaying() {
+        return !closed && is(SessionStore.PLAYING);
+    }
+    /**
+     * Processes one line of the line protocol (for example 'GUESS##a') sent by the player,
+     * adding every response that should be sent back to the given list.
+     * If the player was asked to confirm starting a new game, the line is treated as the answer.
+     * Once the session has been saved to a snapshot, every line is answered with 'RESTARTING'.
+     * Pushed responses not yet taken by the transport are added first.
+     * @param line          the line received from the player
+     * @param responses     list to add the responses for the player to
+     * @return              false if the player asked to disconnect, else true
+     * @throws IllegalArgumentException if the line is not a correctly formatted message
+     */
+    public synchronized boolean process(String line, List<String> responses) {
+        takePending(responses);
+        if (closed) {
+            return false;
+        }
+        if (saved) {
+            responses.add(RESTARTING);
+            return true;
+        }
+        if (is(SessionStore.AWAITING)) {
+            set(SessionStore.AWAITING, false);
+            if (line.toUpperCase().contains("YES")) {
+                responses.add("Starting new game");
+                newGame();
+            } else {
+                responses.add("Continuing");
+                responses.add(getInfo());
+            }
+            return true;
+        }
+        Message msg = new Message(line);
+        switch (msg.type) {
+            case NEWWORD:
+                if (!is(SessionStore.PLAYING)) {
+                    responses.add("Starting new game");
+                    set(SessionStore.PLAYING, true);
+                    newGame();
+                    responses.add(getInfo());
+                } else {
+                    responses.add("Already playing. Start a new game anyway? YES/NO (Score will be decremented if a new game is started)");
+                    set(SessionStore.AWAITING, true);
+                }
+                break;
+            case DISCONNECT:
+                return false;
+            case GUESS:
+                if (!is(SessionStore.PLAYING)) {
+                    responses.add(Constants.NOT_PLAYING);
+                    break;
+                }
+                if (msg.body == null) {
+                    responses.add(Constants.MISSING_BODY);
+                } else {
+                    responses.add(guess(msg.body));
+                }
+                break;
+            case RESPONSE:
+            case SESSION:
+                responses.add("Illegal type - should only be used by the server for responses");
+                break;
+            case RESUME:
+                responses.add("Could not resume, the game was not found");
+                break;
+            case STATE:
+                set(SessionStore.STATE_UPDATES, true);
+                break;
+            case TIMED:
+                responses.add(timed(msg.body));
+                break;
+            case TOURNAMENT:
+                responses.add(clock.join(this));
+                break;
+            case MATCH:
+                matchmaker.leave(ticket);
+                ticket = matchmaker.join(this, getScore());
+                responses.add("Looking for an opponent with a score near " + getScore());
+                break;
+            default:
+                throw new IllegalArgumentException("Error when parsing message: " + msg.fullMsg);
+        }
+        return true;
+    }
+    /**
+     * Sets the listener told when responses are pushed to the session. The listener runs on
+     * the clock thread and must not block, it should hand the session to the transport which
+     * then takes the responses with 'takePending'.
+     * @param listener  the listener, or null to keep pushed responses until the next line is processed
+     */
+    public synchronized void setListener(Runnable listener) {
+        this.listener = listener;
+    }
+    /**
+     * Moves the pushed responses to the given list
+     * @param responses     list to add the responses for the player to
+     */
+    public synchronized void takePending(List<String> responses) {
+        if (pending != null) {
+            responses.addAll(pending);
+            pending = null;
+        }
+    }
+    /**
+     * Pushes a response to the player, outside of the processing of a line
+     * @param response  the response
+     */
+    void push(String response) {
+        synchronized (this) {
+            if (saved || closed) {
+                return;
+            }
+            pend(response);
+        }
+        pushed();
+    }
+    /**
+     * Stops the deadlines of the session, takes it out of the matchmaking queue and
+     * returns its slot to the store once it is no longer played
+     */
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        STORE.release(slot);
+        stopDeadlines();
+        matchmaker.leave(ticket);
+        ticket = null;
+        listener = null;
+    }
+    /**
+     * @return  true if the player has subscribed to the state of the game with a 'STATE' message
+     */
+    public synchronized boolean hasStateUpdates() {
+        return !closed && is(SessionStore.STATE_UPDATES);
+    }
+    /**
+     * The state of the game, sent to players subscribing to it so they can answer
+     * guesses the server would reject without sending them. Formatted as
+     * 'playing;awaiting confirmation;hidden word;tries;guess,guess'
+     * @return  the current state of the game
+     */
+    public synchronized String getState() {
+        String hidden = getHiddenWord();
+        List<String> guesses = getGuesses();
+        StringBuilder sb = new StringBuilder();
+        sb.append(isPlaying() ? 1 : 0).append(Constants.STATE_DELIMETER)
+          .append(!closed && is(SessionStore.AWAITING) ? 1 : 0).append(Constants.STATE_DELIMETER)
+          .append(hidden == null ? "" : hidden).append(Constants.STATE_DELIMETER)
+          .append(getTries()).append(Constants.STATE_DELIMETER);
+        for (int i = 0; i < guesses.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(guesses.get(i));
+        }
+        return sb.toString();
+    }
+    /**
+     * @return  the current hidden word, with dashes for letters not yet guessed, or null if no game has been started
+     */
+    public synchronized String getHiddenWord() {
+        String word = closed ? null : STORE.getWord(slot);
+        if (word == null) {
+            return null;
+        }
+        long revealed = STORE.getRevealed(slot);
+        if (revealed == 0) {
+            return template.getMasked();
+        }
+        char[] hidden = new char[word.length()];
+        for (int i = 0; i < hidden.length; i++) {
+            hidden[i] = (revealed & (1L << i)) != 0 ? word.charAt(i) : '-';
+        }
+        return new String(hidden);
+    }
+    /**
+     * @return  the number of incorrect guesses left in the current game
+     */
+    public synchronized int getTries() {
+        return closed ? 0 : STORE.getTries(slot);
+    }
+    /**
+     * @return  the guesses made in the current game, the letters a-z in alphabetical order first
+     */
+    public synchronized List<String> getGuesses() {
+        List<String> guesses = new ArrayList<>();
+        if (closed) {
+            return guesses;
+        }
+        int letters = STORE.getGuessed(slot);
+        for (int i = 0; i < 26; i++) {
+            if ((letters & (1 << i)) != 0) {
+                guesses.add(String.valueOf((char) ('a' + i)));
+            }
+        }
+        if (otherGuesses != null) {
+            guesses.addAll(otherGuesses);
+        }
+        return guesses;
+    }
+    /**
+     * @return  the counters of the store holding the state of every session, as a JSON object
+     */
+    static String storeJson() {
+        return STORE.toJson();
+    }
+    /**
+     * @return  the counters of the bot detection, as a JSON object
+     */
+    static String botJson() {
+        return DETECTOR.toJson();
+    }
+    /**
+     * Informs a player who resumed this session after a server restart where the game left off
+     * @param responses     list to add the responses for the player to
+     */
+    public synchronized void resumed(List<String> responses) {
+        if (is(SessionStore.PLAYING)) {
+            responses.add("Resumed your game. Current word: " + getHiddenWord() + ", tries remaining: " + getTries());
+            gameGuessLimit = getGuessLimit();
+            gameRoundLimit = getRoundLimit();
+            startDeadlines();
+        } else {
+            responses.add("Resumed your session, your score is: " + getScore() + ". Write 'NEWWORD' to start a new game");
+        }
+    }
+    /**
+     * returns true if the user has guessed all letters correctly
+     * @return  true or false depending on if the user is done
+     */
+    private boolean completedWord() {
+        return STORE.getRevealed(slot) == template.getComplete();
+    }
+    /**
+     * Message when succesfully guessing a word
+     * @return  the gamedone screen text
+     */
+    private String gameDone() {
+        setScore(getScore() + 1);
+        set(SessionStore.PLAYING, false);
+        recordEnd(true);
+        if (tournament != null) {
+            tournament.completed(this);
+        }
+        String result = "";
+        if (match != null) {
+            Match won = match;
+            GameSession opponent = won.completed(this);
+            if (opponent != null) {
+                // the opponent is told on the clock thread, so two sessions are never locked at once
+                clock.schedule(0, () -> opponent.opponentWon(won));
+                result = " You won the match!";
+            }
+        }
+        endTimedGame();
+        String response = "Congratulations, you completed the word: " + getWord() + " with " + getTries() + " tries remaining. "
+                + "Your new score is: " + getScore() + "." + result + " Write 'NEWWORD' to play again";
+        return response;
+    }
+    /**
+     * Message when running out of tries when guessing the word
+     * @return      the gameover screen text
+     */
+    private String gameOver() {
+        setScore(getScore() - 1);
+        set(SessionStore.PLAYING, false);
+        recordEnd(false);
+        endTimedGame();
+        String response = "Game over. The correct word was: " + getWord() + ", your new score is: " + getScore() + ". Write 'NEWWORD' to play again";
+        return response;
+    }
+    /**
+     * Generates a response for a correct guess, if the word is now complete,
+     * generate a gameDone message.
+     * @return      a proper message for a succesful guess
+     */
+    private String succesfulGuess() {
+        if (completedWord()) {
+            return gameDone();
+        }
+        String response = ("Guess succesful! Current word: " + getHiddenWord() + ", tries remaining: " + getTries());
+        return response;
+    }
+    /**
+     * String when a guess is unsuccesful (incorrect guess, not to be confused with invalid guess)
+     * @return      response for an unsuccesful guess
+     */
+    private String unsuccesfulGuess() {
+        String response = ("Guess unsuccesful! Current word: " + getHiddenWord() + ", tries remaining: " + getTries());
+        return response;
+    }
+    /**
+     * String when a guess is invalid
+     * @return  response for an invalid guess
+     */
+    private String invalidGuess() {
+        String response = Constants.INVALID_GUESS;
+        return response;
+    }
+    /**
+     * Initiates a new game, generating a new word from the server
+     * and replacing existing values with initial values.
+     * No letters of the new word are revealed or guessed, and tries is replaced
+     * the length of the new word (word of length 5 has 5 guesses)
+     */
+    private void newGame() {
+        endTimedGame();
+        gameGuessLimit = getGuessLimit();
+        gameRoundLimit = getRoundLimit();
+        newGame(contr.getTemplate(id));
+    }
+    /**
+     * Initiates a new game for the given word, with the time limits of the current game
+     * @param word  the template of the word to be guessed
+     */
+    private void newGame(WordTemplate word) {
+        STORE.setWord(slot, word.getWord());
+        STORE.setTries(slot, word.length());
+        STORE.setStartTime(slot, System.currentTimeMillis());
+        template = word;
+        otherGuesses = null;
+        contr.record(GameEvent.start(id, word.getWord()));
+        startDeadlines();
+    }
+    /**
+     * Starts a tournament game, replacing the current game without changing the score
+     * @param tournament    the tournament the game belongs to
+     * @param word          the word every player of the tournament guesses
+     * @param roundMillis   time limit of the round
+     * @param guessMillis   time limit of every guess
+     */
+    void startTournament(Tournament tournament, WordTemplate word, long roundMillis, long guessMillis) {
+        synchronized (this) {
+            if (saved || closed) {
+                return;
+            }
+            endTimedGame();
+            this.tournament = tournament;
+            gameGuessLimit = guessMillis;
+            gameRoundLimit = roundMillis;
+            set(SessionStore.PLAYING, true);
+            set(SessionStore.AWAITING, false);
+            newGame(word);
+            pend("Tournament " + tournament.getNumber() + " started! You have " + roundMillis / 1000
+                    + " seconds to complete the word, and " + guessMillis / 1000 + " seconds for every guess");
+            pend(getInfo());
+        }
+        pushed();
+    }
+    /**
+     * Starts a head-to-head game against a matched opponent, replacing the current game
+     * without changing the score. The game is timed if the player plays timed games.
+     * @param match         the match the game belongs to
+     * @param word          the word both players guess
+     * @param opponentScore the score of the opponent
+     */
+    void startMatch(Match match, WordTemplate word, int opponentScore) {
+        synchronized (this) {
+            if (saved || closed) {
+                return;
+            }
+            endTimedGame();
+            this.match = match;
+            ticket = null;
+            gameGuessLimit = getGuessLimit();
+            gameRoundLimit = getRoundLimit();
+            set(SessionStore.PLAYING, true);
+            set(SessionStore.AWAITING, false);
+            newGame(word);
+            pend("Opponent found with a score of " + opponentScore + "! You both guess the same word, "
+                    + "the first to complete it wins");
+            pend(getInfo());
+        }
+        pushed();
+    }
+    /**
+     * Ends a head-to-head game the opponent won, called on the clock thread
+     * @param won   the match the opponent won, ignored if the player is no longer playing it
+     */
+    private void opponentWon(Match won) {
+        synchronized (this) {
+            if (match != won || saved || closed || !is(SessionStore.PLAYING)) {
+                return;
+            }
+            pend("Your opponent completed the word first!");
+            pend(gameOver());
+        }
+        pushed();
+    }
+    /**
+     * Sets the timed mode of the player, used from the next game on
+     * @param body  'guess seconds,round seconds', where 0 means no limit, or null to stop playing timed games
+     * @return      the response for the player
+     */
+    private String timed(String body) {
+        int guessSeconds = 0;
+        int roundSeconds = 0;
+        if (body != null) {
+            try {
+                String[] limits = body.split(",");
+                guessSeconds = Integer.parseInt(limits[0].trim());
+                roundSeconds = limits.length > 1 ? Integer.parseInt(limits[1].trim()) : 0;
+            } catch (NumberFormatException e) {
+                guessSeconds = -1;
+            }
+        }
+        if (guessSeconds < 0 || roundSeconds < 0 || guessSeconds > MAX_LIMIT || roundSeconds > MAX_LIMIT) {
+            return "Incorrect format, use 'TIMED##<guess seconds>,<round seconds>' with at most " + MAX_LIMIT + " seconds, 0 for no limit";
+        }
+        STORE.setGuessLimit(slot, guessSeconds);
+        STORE.setRoundLimit(slot, roundSeconds);
+        if (guessSeconds == 0 && roundSeconds == 0) {
+            return "Timed mode off, starting with your next game";
+        }
+        return "Timed mode on, starting with your next game: "
+                + (guessSeconds > 0 ? guessSeconds + " seconds per guess" : "no limit per guess") + " and "
+                + (roundSeconds > 0 ? roundSeconds + " seconds per round" : "no limit per round");
+    }
+    /**
+     * Schedules the deadlines of the current game, if it is timed
+     */
+    private void startDeadlines() {
+        stopDeadlines();
+        if (gameRoundLimit > 0) {
+            int deadline = ++deadlines;
+            roundNumber = deadline;
+            roundDeadline = clock.schedule(gameRoundLimit, () -> roundExpired(deadline));
+        }
+        restartGuessDeadline();
+    }
+    /**
+     * Gives the player a new 'gameGuessLimit' for the next guess
+     */
+    private void restartGuessDeadline() {
+        clock.cancel(guessDeadline);
+        guessDeadline = null;
+        guessNumber = 0;
+        if (gameGuessLimit > 0) {
+            int deadline = ++deadlines;
+            guessNumber = deadline;
+            guessDeadline = clock.schedule(gameGuessLimit, () -> guessExpired(deadline));
+        }
+    }
+    private void stopDeadlines() {
+        clock.cancel(guessDeadline);
+        clock.cancel(roundDeadline);
+        guessDeadline = null;
+        roundDeadline = null;
+        guessNumber = 0;
+        roundNumber = 0;
+    }
+    /**
+     * Ends the timing, tournament and match of the current game, when it is over or replaced
+     */
+    private void endTimedGame() {
+        stopDeadlines();
+        tournament = null;
+        match = null;
+    }
+    /**
+     * Called by the clock when the player took too long for a guess, which costs a try
+     * @param deadline  number of the expired deadline, ignored if it was replaced or cancelled
+     */
+    private void guessExpired(int deadline) {
+        synchronized (this) {
+            if (deadline != guessNumber || saved || closed || !is(SessionStore.PLAYING)) {
+                return;
+            }
+            guessDeadline = null;
+            guessNumber = 0;
+            STORE.setTries(slot, getTries() - 1);
+            if (getTries() == 0) {
+                pend("Time is up for your guess!");
+                pend(gameOver());
+            } else {
+                pend("Time is up for your guess! Current word: " + getHiddenWord() + ", tries remaining: " + getTries());
+                restartGuessDeadline();
+            }
+        }
+        pushed();
+    }
+    /**
+     * Called by the clock when the round is over before the word was completed
+     * @param deadline  number of the expired deadline, ignored if it was replaced or cancelled
+     */
+    private void roundExpired(int deadline) {
+        synchronized (this) {
+            if (deadline != roundNumber || saved || closed || !is(SessionStore.PLAYING)) {
+                return;
+            }
+            roundDeadline = null;
+            roundNumber = 0;
+            pend("Time is up for this round!");
+            pend(gameOver());
+        }
+        pushed();
+    }
+    /**
+     * Tells the listener that responses were pushed
+     */
+    private void pushed() {
+        Runnable notify;
+        synchronized (this) {
+            notify = listener;
+        }
+        if (notify != null) {
+            notify.run();
+        }
+    }
+    /**
+     * Records the outcome of the current game in the event log
+     * @param won   true if the word was completed
+     */
+    private void recordEnd(boolean won) {
+        String word = getWord();
+        int misses = word.length() - getTries();
+        int duration = (int) (System.currentTimeMillis() - STORE.getStartTime(slot));
+        contr.record(GameEvent.end(id, word, won, misses, duration));
+    }
+    /**
+     * Checks if the given string only contains characters
+     * @param s the string to check
+     * @return true if only characters are found, else false
+     */
+    private boolean isLetter(String s) {
+        for (char c : s.toCharArray()) {
+            if (!Character.isLetter(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    /**
+     * Prints out user information
+     */
+    private String getInfo() {
+        String response = "Current word is " + getWord().length() + " characters. You have " + getTries() + " guesses remaining";
+        return response;
+    }
+    /**
+     * Processes a user guess, saving it in a list of past guesses to assure non-multiple
+     * same letter/word guesses.
+     * @param guess     the guessed letter/word by the user
+     * @return          a reply depending on the result of the guess
+     */
+    private String guess(String guess) {
+        if (!isLetter(guess)) {
+            return Constants.INCORRECT_FORMAT;
+        }
+        if (!DETECTOR.admit(STORE, slot, guess, System.nanoTime())) {
+            return BotDetector.SLOW_DOWN;
+        }
+        if (!addGuess(guess)) {
+            return Constants.ALREADY_GUESSED;
+        }
+        if (!template.fits(guess)) {
+            return invalidGuess();
+        }
+        long revealed = STORE.getRevealed(slot);
+        long updated = contr.processGuess(id, guess, template, revealed);
+        boolean succesful = updated != revealed;
+        contr.record(GameEvent.guess(id, template.getWord(), guess.toLowerCase(), succesful));
+        restartGuessDeadline();
+        if (succesful) {
+            STORE.setRevealed(slot, updated);
+            return succesfulGuess();
+        } else {
+            STORE.setTries(slot, getTries() - 1);
+            if (getTries() == 0) {
+                return gameOver();
+            } else {
+                return unsuccesfulGuess();
+            }
+        }
+    }
+    /**
+     * Writes the state of the session to a snapshot, preceded by how it is played.
+     * The session stops accepting guesses once saved, the player continues in the
+     * session restored from the snapshot. Closed sessions are not written.
+     * @param out   the snapshot to write to
+     * @param http  true if the session is played over HTTP
+     * @return      false if the session was closed, and nothing was written
+     * @throws IOException  if writing fails
+     */
+    synchronized boolean save(DataOutputStream out, boolean http) throws IOException {
+        if (closed) {
+            return false;
+        }
+        saved = true;
+        String word = getWord();
+        out.writeByte(http ? 1 : 0);
+        out.writeLong(id);
+        out.writeLong(secret);
+        out.writeInt(getScore());
+        out.writeInt(getGuessLimit());
+        out.writeInt(getRoundLimit());
+        out.writeByte((is(SessionStore.PLAYING) ? 1 : 0) | (is(SessionStore.AWAITING) ? 2 : 0) | (word != null ? 4 : 0));
+        if (word == null) {
+            return true;
+        }
+        writeString(out, word);
+        long revealed = STORE.getRevealed(slot);
+        for (int i = 0; i < word.length(); i += 8) {
+            out.writeByte((int) (revealed >>> i));
+        }
+        out.writeShort(getTries());
+        out.writeLong(STORE.getStartTime(slot));
+        List<String> guesses = getGuesses();
+        out.writeShort(guesses.size());
+        for (String guess : guesses) {
+            writeString(out, guess);
+        }
+        return true;
+    }
+    /**
+     * Restores a session saved by 'save'
+     * @param in            the snapshot, positioned at the start of the session
+     * @param controller    the controller the restored session uses
+     * @param clock         the clock timing the restored session
+     * @param matchmaker    the matchmaker pairing the restored session
+     * @return              the restored session
+     */
+    static GameSession restore(ByteBuffer in, ServerController controller, GameClock clock, Matchmaker matchmaker) {
+        GameSession session = new GameSession(controller, clock, matchmaker, in.getLong(), in.getLong());
+        NEXT_ID.accumulateAndGet(session.id + 1, Math::max);
+        int slot = session.slot;
+        STORE.setScore(slot, in.getInt());
+        STORE.setGuessLimit(slot, in.getInt() / 1000);
+        STORE.setRoundLimit(slot, in.getInt() / 1000);
+        int flags = in.get();
+        session.set(SessionStore.PLAYING, (flags & 1) != 0);
+        session.set(SessionStore.AWAITING, (flags & 2) != 0);
+        if ((flags & 4) == 0) {
+            return session;
+        }
+        String word = readString(in);
+        STORE.setWord(slot, word);
+        session.template = controller.templateOf(word);
+        long revealed = 0;
+        for (int i = 0; i < word.length(); i += 8) {
+            revealed |= (in.get() & 0xFFL) << i;
+        }
+        STORE.setRevealed(slot, revealed);
+        STORE.setTries(slot, in.getShort());
+        STORE.setStartTime(slot, in.getLong());
+        int guessCount = in.getShort();
+        for (int i = 0; i < guessCount; i++) {
+            session.addGuess(readString(in));
+        }
+        return session;
+    }
+    /**
+     * Adds a guess to the guesses of the current game. Single letters a-z are kept as bits
+     * of the slot, other guesses in a list only created when such a guess is made.
+     * @param guess     the guess
+     * @return          false if the guess was already made
+     */
+    private boolean addGuess(String guess) {
+        if (guess.length() == 1 && guess.charAt(0) >= 'a' && guess.charAt(0) <= 'z') {
+            int letters = STORE.getGuessed(slot);
+            int bit = 1 << (guess.charAt(0) - 'a');
+            STORE.setGuessed(slot, letters | bit);
+            return (letters & bit) == 0;
+        }
+        if (otherGuesses == null) {
+            otherGuesses = new ArrayList<>(1);
+        } else if (otherGuesses.contains(guess)) {
+            return false;
+        }
+        otherGuesses.add(guess);
+        return true;
+    }
+    /**
+     * Adds a pushed response, creating the list of pushed responses when needed
+     */
+    private void pend(String response) {
+        if (pending == null) {
+            pending = new ArrayList<>(2);
+        }
+        pending.add(response);
+    }
+    private String getWord() {
+        return STORE.getWord(slot);
+    }
+    private int getScore() {
+        return STORE.getScore(slot);
+    }
+    private void setScore(int score) {
+        STORE.setScore(slot, score);
+    }
+    /**
+     * @return  the time limit of a guess in the timed mode of the player in milliseconds, 0 if untimed
+     */
+    private int getGuessLimit() {
+        return STORE.getGuessLimit(slot) * 1000;
+    }
+    /**
+     * @return  the time limit of a round in the timed mode of the player in milliseconds, 0 if untimed
+     */
+    private int getRoundLimit() {
+        return STORE.getRoundLimit(slot) * 1000;
+    }
+    private boolean is(int flag) {
+        return STORE.isSet(slot, flag);
+    }
+    private void set(int flag, boolean set) {
+        STORE.setFlag(slot, flag, set);
+    }
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort() & 0xFFFF];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,939 @@
+package server.net;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import server.controller.ServerController;
+import server.log.ServerLog;
+import server.model.WordStatistics;
+import common.Constants;
+import common.ServerMessageTypes;
+/**
+ *  Non-blocking HTTP/1.1 and WebSocket front end for the hangman game.
+ * A single selector thread serves every connection, keeping connections alive between
+ * requests and reading into pooled buffers, so clients don't pay a TCP handshake per request.
+ * Requests and frames are rate limited per connection, and output is bounded, by the shared 'Throttle'.
+ * A request for a new word while the words are still loading waits, without blocking the selector thread.
+ *
+ * HTTP clients play through JSON resources:
+ *  POST   /games                      starts a session, replies with its token ('id:secret')
+ *  GET    /games/{token}              the current state of the session
+ *  POST   /games/{token}/newword      starts a new game, '?confirm=YES' answers the restart question
+ *  POST   /games/{token}/guess        guesses the letter/word given as '?value=' or as the request body
+ *  POST   /games/{token}/timed        plays timed games with '?guess=' and '?round=' seconds, 0 for no limit
+ *  POST   /games/{token}/tournament   joins the next scheduled tournament
+ *  POST   /games/{token}/match        waits for an opponent of a similar score to guess the same word
+ *  DELETE /games/{token}              ends the session
+ *  GET    /stats                      the throttling counters
+ *  GET    /stats/words/{word}         win rate, average misses and duration of games with the word
+ *  GET    /stats/letters              how often each letter is guessed, and how often correctly
+ *  GET    /stats/matchmaking          players waiting for an opponent, match rate and waiting times
+ *  GET    /stats/sessions             sessions held by the session store and its off-heap memory
+ *  GET    /stats/bots                 guesses judged, throttled and sessions suspected of being scripts
+ *  GET    /stats/templates            hits, misses and evictions of the cache of word templates
+ *  GET    /stats/log                  records logged by the server log, and records dropped as it fell behind
+ * WebSocket clients connect to /ws and send the same lines as socket clients ('GUESS##a'),
+ * each response is sent back as a text frame formatted like the socket protocol ('RESPONSE##...').
+ * Sessions are named by their token rather than their id, as ids are sequential and could be guessed.
+ * HTTP sessions restored from a snapshot are resumed by their token, websocket sessions by 'RESUME##token'.
+ * Responses pushed by the game clock are sent as frames to websocket clients right away, HTTP
+ * clients get them with the response to their next request.
+ */
+public class HttpGateway implements Runnable {
+
+    private static final int    BUFFER_SIZE     = 8192;         // max size of a request or websocket frame
+    private static final int    POOLED_BUFFERS  = 1024;         // max number of idle buffers kept for reuse
+    private static final long   SESSION_TIMEOUT = 1800000;      // time before an idle HTTP session is removed
+    private static final long   SWEEP_INTERVAL  = 60000;        // time between checks for idle sessions
+    private static final String WS_GUID         = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final int    WS_TEXT         = 0x1;
+    private static final int    WS_CLOSE        = 0x8;
+    private static final int    WS_PING         = 0x9;
+    private static final int    WS_PONG         = 0xA;
+
+    private final ServerController contr;
+    private final Throttle throttle;
+    private final SessionRegistry registry;
+    private final GameClock clock;
+    private final Matchmaker matchmaker;
+    private final int port;
+    private final BufferPool buffers = new BufferPool(BUFFER_SIZE, POOLED_BUFFERS);
+    private final Map<Long, HttpSession> sessions = new HashMap<>();
+    private final List<String> responses = new ArrayList<>();
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private Selector selector;
+
+    public HttpGateway(ServerController controller, Throttle throttle, SessionRegistry registry, GameClock clock,
+            Matchmaker matchmaker, int port) {
+        this.contr = controller;
+        this.throttle = throttle;
+        this.registry = registry;
+        this.clock = clock;
+        this.matchmaker = matchmaker;
+        this.port = port;
+    }
+    /**
+     * The gateway thread spends its lifetime here, accepting, reading and writing
+     * connections as they become ready
+     */
+    @Override
+    public void run() {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            selector = Selector.open();
+            server.bind(new InetSocketAddress(port));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            long lastSweep = System.currentTimeMillis();
+            while (true) {
+                selector.select(SWEEP_INTERVAL);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                long now = System.currentTimeMillis();
+                if (now - lastSweep >= SWEEP_INTERVAL) {
+                    removeIdleSessions(now);
+                    lastSweep = now;
+                }
+            }
+        } catch (IOException e) {
+            ServerLog.error("Error when creating gateway socket with port", port + ": " + e.getMessage());
+        }
+    }
+    /**
+     * Performs the operations a selected key is ready for, closing the connection
+     * if any of them fails
+     * @param key   the selected key
+     */
+    private void handle(SelectionKey key) {
+        try {
+            if (!key.isValid()) {
+                return;
+            }
+            if (key.isAcceptable()) {
+                accept((ServerSocketChannel) key.channel());
+                return;
+            }
+            if (key.isReadable()) {
+                read(key);
+            }
+            if (key.isValid() && key.isWritable()) {
+                write(key);
+            }
+        } catch (IOException e) {
+            close(key);
+        }
+    }
+    /**
+     * Accepts a new connection and registers it for reading
+     * @param server    the listening channel
+     * @throws IOException  if the connection can not be configured
+     */
+    private void accept(ServerSocketChannel server) throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.register(selector, SelectionKey.OP_READ, new Connection(channel, buffers.take(), throttle.newSessionBucket()));
+    }
+    /**
+     * Reads what is available from the connection and handles it
+     * @param key   the key of the connection
+     * @throws IOException  if reading from the connection fails
+     */
+    private void read(SelectionKey key) throws IOException {
+        Connection conn = (Connection) key.attachment();
+        if (conn.channel.read(conn.in) < 0) {
+            close(key);
+            return;
+        }
+        handleInput(key, conn);
+    }
+    /**
+     * Handles every complete request or frame found in the connection buffer,
+     * unless the connection has been paused until its output is written or is waiting for the words to load
+     * @param key   the key of the connection
+     * @param conn  the connection
+     * @throws IOException  if writing to the connection fails
+     */
+    private void handleInput(SelectionKey key, Connection conn) throws IOException {
+        conn.in.flip();
+        boolean more = true;
+        while (more && conn.in.hasRemaining() && !conn.closeAfterWrite && !conn.paused && !conn.waiting) {
+            more = conn.webSocket ? readFrame(conn) : readRequest(conn);
+        }
+        if (!conn.in.hasRemaining()) {
+            conn.in.clear();
+        } else {
+            conn.in.compact();
+            if (!conn.in.hasRemaining() && !conn.closeAfterWrite && !conn.paused && !conn.waiting) {
+                // the buffer is full without holding one complete request or frame
+                if (conn.webSocket) {
+                    sendClose(conn, 1009);
+                } else {
+                    sendError(conn, 413, "Request too large", false);
+                }
+            }
+        }
+        flush(key, conn);
+    }
+    /**
+     * Writes queued output to the connection, used when the connection
+     * could not take all output at once
+     * @param key   the key of the connection
+     * @throws IOException  if writing to the connection fails
+     */
+    private void write(SelectionKey key) throws IOException {
+        flush(key, (Connection) key.attachment());
+    }
+    /**
+     * Writes as much of the queued output as the connection takes without blocking.
+     * Registers for writing if output remains, and closes the connection if it has
+     * been asked to close and all output has been written. A paused connection is
+     * resumed once its output has been written.
+     * @param key   the key of the connection
+     * @param conn  the connection
+     * @throws IOException  if writing to the connection fails
+     */
+    private void flush(SelectionKey key, Connection conn) throws IOException {
+        while (!conn.out.isEmpty()) {
+            ByteBuffer buffer = conn.out.peek();
+            conn.queued -= conn.channel.write(buffer);
+            if (buffer.hasRemaining()) {
+                key.interestOps(readInterest(conn) | SelectionKey.OP_WRITE);
+                return;
+            }
+            conn.out.poll();
+        }
+        if (conn.closeAfterWrite) {
+            close(key);
+        } else if (key.isValid()) {
+            key.interestOps(readInterest(conn));
+            if (conn.paused) {
+                conn.paused = false;
+                handleInput(key, conn);
+            }
+        }
+    }
+    /**
+     * @return  OP_READ, unless reading from the connection has been paused or is waiting for the words to load
+     */
+    private int readInterest(Connection conn) {
+        return conn.paused || conn.waiting ? 0 : SelectionKey.OP_READ;
+    }
+    /**
+     * Stops handling input from a connection until the words have been loaded. The request
+     * that needs a word is left in the buffer and handled once the words are loaded.
+     * @param conn  the connection
+     */
+    private void waitForWords(Connection conn) {
+        conn.waiting = true;
+        contr.whenReady(() -> {
+            tasks.add(() -> resumeWaiting(conn));
+            selector.wakeup();
+        });
+    }
+    /**
+     * Continues handling input from a connection that waited for the words to load
+     * @param conn  the connection
+     */
+    private void resumeWaiting(Connection conn) {
+        SelectionKey key = conn.channel.keyFor(selector);
+        if (key == null || !key.isValid()) {
+            return;
+        }
+        conn.waiting = false;
+        try {
+            handleInput(key, conn);
+        } catch (IOException e) {
+            close(key);
+        }
+    }
+    /**
+     * Queues output for the connection. If the output queued for the connection would exceed
+     * the throttles limit, the throttles 'OverflowPolicy' is applied. Dropping is only possible
+     * for websocket frames, HTTP responses can't be skipped and disconnect instead.
+     * @param conn      the connection
+     * @param output    the output to queue
+     * @param droppable if the output may be dropped without breaking the protocol
+     */
+    private void queue(Connection conn, ByteBuffer output, boolean droppable) {
+        if (conn.closeAfterWrite) {
+            return;
+        }
+        if (conn.queued + output.remaining() > throttle.maxOutbound()) {
+            Throttle.OverflowPolicy action = throttle.policy();
+            if (action == Throttle.OverflowPolicy.DROP && !droppable) {
+                action = Throttle.OverflowPolicy.DISCONNECT;
+            }
+            throttle.overflowed(action);
+            switch (action) {
+                case DROP:
+                    return;
+                case DISCONNECT:
+                    conn.out.clear();
+                    conn.queued = 0;
+                    conn.closeAfterWrite = true;
+                    return;
+                default:
+                    conn.paused = true;
+                    break;
+            }
+        }
+        conn.out.add(output);
+        conn.queued += output.remaining();
+    }
+    /**
+     * Closes the connection and returns its buffer to the pool
+     * @param key   the key of the connection
+     */
+    private void close(SelectionKey key) {
+        key.cancel();
+        Connection conn = (Connection) key.attachment();
+        if (conn == null) {
+            return;
+        }
+        try {
+            conn.channel.close();
+        } catch (IOException e) {
+            ServerLog.warn("Error when closing gateway connection", e);
+        }
+        buffers.release(conn.in);
+        conn.in = null;
+        if (conn.game != null) {
+            registry.unregister(conn.game);
+        }
+    }
+    /**
+     * Parses and answers one HTTP request from the connection buffer
+     * @param conn  the connection
+     * @return      false if no complete request was found
+     */
+    private boolean readRequest(Connection conn) {
+        ByteBuffer in = conn.in;
+        int start = in.position();
+        int headEnd = indexOfHeadEnd(in);
+        if (headEnd < 0) {
+            return false;
+        }
+        String[] lines = decode(in, start, headEnd - start, StandardCharsets.ISO_8859_1).split("\r\n");
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length != 3) {
+            sendError(conn, 400, "Malformed request line", false);
+            return false;
+        }
+        Map<String, String> headers = new HashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon > 0) {
+                headers.put(lines[i].substring(0, colon).trim().toLowerCase(), lines[i].substring(colon + 1).trim());
+            }
+        }
+        if (headers.containsKey("transfer-encoding")) {
+            sendError(conn, 501, "Chunked requests are not supported", false);
+            return false;
+        }
+        int length;
+        try {
+            length = headers.containsKey("content-length") ? Integer.parseInt(headers.get("content-length")) : 0;
+        } catch (NumberFormatException e) {
+            length = -1;
+        }
+        if (length < 0 || headEnd - start + length > BUFFER_SIZE) {
+            sendError(conn, length < 0 ? 400 : 413, "Illegal content length", false);
+            return false;
+        }
+        if (in.limit() - headEnd < length) {
+            return false;
+        }
+        if (!contr.isReady() && requestLine[1].split("\\?")[0].endsWith("/newword")) {
+            waitForWords(conn);
+            return false;
+        }
+        String body = decode(in, headEnd, length, StandardCharsets.UTF_8);
+        in.position(headEnd + length);
+
+        String connection = headers.getOrDefault("connection", "");
+        boolean keepAlive = "HTTP/1.1".equals(requestLine[2])
+                ? !connection.equalsIgnoreCase("close")
+                : connection.equalsIgnoreCase("keep-alive");
+        if ("websocket".equalsIgnoreCase(headers.get("upgrade"))) {
+            return upgrade(conn, requestLine[0], requestLine[1], headers);
+        }
+        route(conn, requestLine[0], requestLine[1], body, keepAlive);
+        return keepAlive;
+    }
+    /**
+     * Finds the end of the request head (the position after the empty line)
+     * @param in    buffer holding the request, positioned at its start
+     * @return      the position after the head, or -1 if the head is not complete
+     */
+    private int indexOfHeadEnd(ByteBuffer in) {
+        for (int i = in.position() + 3; i < in.limit(); i++) {
+            if (in.get(i) == '\n' && in.get(i - 1) == '\r' && in.get(i - 2) == '\n' && in.get(i - 3) == '\r') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+    /**
+     * Answers a HTTP request by mapping it onto the game session it names
+     * @param conn      the connection to answer on
+     * @param method    the request method
+     * @param target    the request target, including the query
+     * @param body      the request body
+     * @param keepAlive if the connection stays open after the response
+     */
+    private void route(Connection conn, String method, String target, String body, boolean keepAlive) {
+        int query = target.indexOf('?');
+        String path = query < 0 ? target : target.substring(0, query);
+        Map<String, String> params = parseQuery(query < 0 ? "" : target.substring(query + 1));
+        String[] parts = path.split("/");
+        if (!throttle.admit(conn.inbound)) {
+            sendError(conn, 429, Throttle.THROTTLED, keepAlive);
+            return;
+        }
+        if (path.equals("/ws")) {
+            sendError(conn, 426, "Use a websocket upgrade for /ws", keepAlive);
+            return;
+        }
+        if (path.equals("/stats") && method.equals("GET")) {
+            sendJson(conn, 200, throttle.toJson(), keepAlive);
+            return;
+        }
+        if (path.startsWith("/stats/") && method.equals("GET")) {
+            routeStatistics(conn, parts, keepAlive);
+            return;
+        }
+        if (parts.length < 2 || !parts[1].equals("games")) {
+            sendError(conn, 404, "Unknown resource " + path, keepAlive);
+            return;
+        }
+        if (parts.length == 2) {
+            if (!method.equals("POST")) {
+                sendError(conn, 405, "Use POST to start a session", keepAlive);
+                return;
+            }
+            HttpSession session = new HttpSession(new GameSession(contr, clock, matchmaker));
+            sessions.put(session.id, session);
+            registry.register(session.game, true);
+            sendJson(conn, 201, sessionJson(session), keepAlive);
+            return;
+        }
+        HttpSession session;
+        try {
+            String[] token = parts[2].split(":");
+            long id = Long.parseLong(token[0]);
+            long secret = Long.parseLong(token[1]);
+            session = sessions.get(id);
+            if (session != null && !session.game.hasSecret(secret)) {
+                session = null;
+            } else if (session == null) {
+                GameSession resumed = registry.resumeHttp(id, secret);
+                if (resumed != null) {
+                    session = new HttpSession(resumed);
+                    sessions.put(session.id, session);
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            session = null;
+        }
+        if (session == null) {
+            sendError(conn, 404, "Unknown session " + parts[2], keepAlive);
+            return;
+        }
+        session.lastUsed = System.currentTimeMillis();
+        String operation = parts.length > 3 ? parts[3] : "";
+        String line;
+        if (operation.isEmpty() && method.equals("GET")) {
+            line = null;
+            session.game.takePending(responses);
+        } else if (operation.isEmpty() && method.equals("DELETE")) {
+            String json = sessionJson(session);      // read before the state of the session is released
+            sessions.remove(session.id);
+            registry.unregister(session.game);
+            sendJson(conn, 200, json, keepAlive);
+            return;
+        } else if (operation.equals("newword") && method.equals("POST")) {
+            line = ServerMessageTypes.NEWWORD.toString();
+        } else if (operation.equals("guess") && method.equals("POST")) {
+            String value = params.containsKey("value") ? params.get("value") : body.trim();
+            line = ServerMessageTypes.GUESS + Constants.DELIMETER + value;
+        } else if (operation.equals("timed") && method.equals("POST")) {
+            String guess = params.containsKey("guess") ? params.get("guess") : "0";
+            String round = params.containsKey("round") ? params.get("round") : "0";
+            line = ServerMessageTypes.TIMED + Constants.DELIMETER + guess + "," + round;
+        } else if (operation.equals("tournament") && method.equals("POST")) {
+            line = ServerMessageTypes.TOURNAMENT.toString();
+        } else if (operation.equals("match") && method.equals("POST")) {
+            line = ServerMessageTypes.MATCH.toString();
+        } else {
+            sendError(conn, 405, method + " is not supported for " + path, keepAlive);
+            return;
+        }
+        try {
+            if (line != null) {
+                session.game.process(line, responses);
+                if (params.containsKey("confirm")) {
+                    session.game.process(params.get("confirm"), responses);
+                }
+            }
+            sendJson(conn, 200, sessionJson(session), keepAlive);
+        } catch (IllegalArgumentException e) {
+            sendError(conn, 400, e.getMessage(), keepAlive);
+        } finally {
+            responses.clear();
+        }
+    }
+    /**
+     * Answers a request for the game statistics, either of a single word (/stats/words/{word}),
+     * the hit rate of every letter (/stats/letters), the matchmaking counters (/stats/matchmaking)
+     * the session store counters (/stats/sessions), the bot detection counters (/stats/bots),
+     * the word template cache counters (/stats/templates) or the server log counters (/stats/log)
+     */
+    private void routeStatistics(Connection conn, String[] parts, boolean keepAlive) {
+        WordStatistics statistics = contr.getStatistics();
+        if (parts.length == 4 && parts[2].equals("words")) {
+            WordStatistics.WordStats stats = statistics.get(parts[3].toLowerCase());
+            if (stats == null) {
+                sendError(conn, 404, "No games played with " + parts[3], keepAlive);
+                return;
+            }
+            sendJson(conn, 200, "{\"word\":" + quote(parts[3].toLowerCase())
+                    + ",\"games\":" + stats.getGames()
+                    + ",\"wins\":" + stats.getWins()
+                    + ",\"losses\":" + stats.getLosses()
+                    + ",\"winRate\":" + stats.getWinRate()
+                    + ",\"averageMisses\":" + stats.getAverageMisses()
+                    + ",\"averageDuration\":" + stats.getAverageDuration() + "}", keepAlive);
+        } else if (parts.length == 3 && parts[2].equals("matchmaking")) {
+            sendJson(conn, 200, matchmaker.toJson(), keepAlive);
+        } else if (parts.length == 3 && parts[2].equals("sessions")) {
+            sendJson(conn, 200, GameSession.storeJson(), keepAlive);
+        } else if (parts.length == 3 && parts[2].equals("bots")) {
+            sendJson(conn, 200, GameSession.botJson(), keepAlive);
+        } else if (parts.length == 3 && parts[2].equals("templates")) {
+            sendJson(conn, 200, contr.templateCacheJson(), keepAlive);
+        } else if (parts.length == 3 && parts[2].equals("log")) {
+            sendJson(conn, 200, ServerLog.toJson(), keepAlive);
+        } else if (parts.length == 3 && parts[2].equals("letters")) {
+            StringBuilder sb = new StringBuilder("{");
+            for (char c = 'a'; c <= 'z'; c++) {
+                if (c > 'a') {
+                    sb.append(',');
+                }
+                sb.append('"').append(c).append("\":{\"guesses\":").append(statistics.letterGuesses(c))
+                  .append(",\"hitRate\":").append(statistics.letterHitRate(c)).append('}');
+            }
+            sendJson(conn, 200, sb.append('}').toString(), keepAlive);
+        } else {
+            sendError(conn, 404, "Unknown statistics", keepAlive);
+        }
+    }
+    /**
+     * Answers a websocket upgrade request, switching the connection to websocket frames
+     * @return      true if the connection was upgraded
+     */
+    private boolean upgrade(Connection conn, String method, String target, Map<String, String> headers) {
+        String key = headers.get("sec-websocket-key");
+        if (!method.equals("GET") || !target.equals("/ws") || key == null) {
+            sendError(conn, 400, "Websocket upgrades are only accepted on GET /ws", false);
+            return false;
+        }
+        String accept;
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            accept = Base64.getEncoder().encodeToString(sha1.digest((key + WS_GUID).getBytes(StandardCharsets.ISO_8859_1)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is required by every JVM", e);
+        }
+        String response = "HTTP/1.1 101 Switching Protocols\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Accept: " + accept + "\r\n\r\n";
+        queue(conn, ByteBuffer.wrap(response.getBytes(StandardCharsets.ISO_8859_1)), false);
+        conn.webSocket = true;
+        conn.game = new GameSession(contr, clock, matchmaker);
+        registry.register(conn.game, false);
+        listen(conn);
+        sendSessionFrame(conn);
+        return true;
+    }
+    /**
+     * Parses and answers one websocket frame from the connection buffer.
+     * Text frames are handled as lines of the socket protocol.
+     * @param conn  the connection
+     * @return      false if no complete frame was found
+     */
+    private boolean readFrame(Connection conn) {
+        ByteBuffer in = conn.in;
+        int start = in.position();
+        if (in.remaining() < 2) {
+            return false;
+        }
+        int first = in.get(start) & 0xFF;
+        int second = in.get(start + 1) & 0xFF;
+        int opcode = first & 0x0F;
+        long length = second & 0x7F;
+        int header = 2;
+        if (length == 126) {
+            if (in.remaining() < 4) {
+                return false;
+            }
+            length = in.getShort(start + 2) & 0xFFFF;
+            header = 4;
+        } else if (length == 127) {
+            if (in.remaining() < 10) {
+                return false;
+            }
+            length = in.getLong(start + 2);
+            header = 10;
+        }
+        if ((second & 0x80) == 0) {
+            sendClose(conn, 1002);      // frames from clients must be masked
+            return false;
+        }
+        header += 4;
+        if (length < 0 || length > BUFFER_SIZE - header) {
+            sendClose(conn, 1009);
+            return false;
+        }
+        if (in.remaining() < header + length) {
+            return false;
+        }
+        byte[] payload = new byte[(int) length];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) (in.get(start + header + i) ^ in.get(start + header - 4 + (i & 3)));
+        }
+        in.position(start + header + (int) length);
+        if ((first & 0x80) == 0 && opcode != WS_CLOSE) {
+            sendClose(conn, 1003);      // fragmented messages are not supported
+            return false;
+        }
+        switch (opcode) {
+            case WS_TEXT:
+                String line = new String(payload, StandardCharsets.UTF_8).trim();
+                if (!contr.isReady() && line.toUpperCase().startsWith(ServerMessageTypes.NEWWORD.toString())) {
+                    in.position(start);
+                    waitForWords(conn);
+                    return false;
+                }
+                return handleLine(conn, line);
+            case WS_PING:
+                sendFrame(conn, WS_PONG, payload);
+                return true;
+            case WS_PONG:
+                return true;
+            case WS_CLOSE:
+                sendFrame(conn, WS_CLOSE, payload);
+                conn.closeAfterWrite = true;
+                return false;
+            default:
+                sendClose(conn, 1003);
+                return false;
+        }
+    }
+    /**
+     * Handles one line of the socket protocol received over a websocket
+     * @param conn  the connection the line was received on
+     * @param line  the received line
+     * @return      false if the player disconnected
+     */
+    private boolean handleLine(Connection conn, String line) {
+        boolean stay = true;
+        if (!throttle.admit(conn.inbound)) {
+            responses.add(Throttle.THROTTLED);
+        } else {
+            try {
+                GameSession resumed = registry.resumeLine(line);
+                if (resumed != null) {
+                    registry.unregister(conn.game);
+                    conn.game = resumed;
+                    listen(conn);
+                    sendSessionFrame(conn);
+                    resumed.resumed(responses);
+                } else {
+                    stay = conn.game.process(line, responses);
+                }
+            } catch (IllegalArgumentException e) {
+                responses.add(e.getMessage());
+            }
+        }
+        sendResponseFrames(conn);
+        if (!stay) {
+            sendClose(conn, 1000);
+        }
+        return stay;
+    }
+    /**
+     * Queues a text frame for every response ('RESPONSE##response'), followed by the state of the game
+     */
+    private void sendResponseFrames(Connection conn) {
+        for (String response : responses) {
+            String message = ServerMessageTypes.RESPONSE + Constants.DELIMETER + response;
+            sendFrame(conn, WS_TEXT, message.getBytes(StandardCharsets.UTF_8));
+        }
+        responses.clear();
+        sendStateFrame(conn);
+    }
+    /**
+     * Listens for responses pushed to the websocket connections game by the game clock,
+     * handing them to the selector thread
+     */
+    private void listen(Connection conn) {
+        conn.game.setListener(() -> {
+            tasks.add(() -> sendPushed(conn));
+            selector.wakeup();
+        });
+    }
+    /**
+     * Sends the responses pushed to the game of a websocket connection
+     * @param conn  the connection
+     */
+    private void sendPushed(Connection conn) {
+        SelectionKey key = conn.channel.keyFor(selector);
+        if (key == null || !key.isValid()) {
+            return;
+        }
+        conn.game.takePending(responses);
+        sendResponseFrames(conn);
+        try {
+            flush(key, conn);
+        } catch (IOException e) {
+            close(key);
+        }
+    }
+    /**
+     * Queues a text frame with the token of the connections session ('SESSION##token')
+     */
+    private void sendSessionFrame(Connection conn) {
+        String message = ServerMessageTypes.SESSION + Constants.DELIMETER + conn.game.getToken();
+        sendFrame(conn, WS_TEXT, message.getBytes(StandardCharsets.UTF_8));
+    }
+    /**
+     * Queues a text frame with the state of the connections game ('STATE##state'),
+     * if the player has subscribed to it and it changed since the last frame
+     */
+    private void sendStateFrame(Connection conn) {
+        if (!conn.game.hasStateUpdates()) {
+            return;
+        }
+        String state = conn.game.getState();
+        if (!state.equals(conn.lastState)) {
+            conn.lastState = state;
+            String message = ServerMessageTypes.STATE + Constants.DELIMETER + state;
+            sendFrame(conn, WS_TEXT, message.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+    /**
+     * Queues a close frame with the given status code, closing the connection once written
+     */
+    private void sendClose(Connection conn, int status) {
+        sendFrame(conn, WS_CLOSE, new byte[] {(byte) (status >> 8), (byte) status});
+        conn.closeAfterWrite = true;
+    }
+    /**
+     * Queues an unmasked websocket frame holding the whole payload
+     */
+    private void sendFrame(Connection conn, int opcode, byte[] payload) {
+        int header = payload.length < 126 ? 2 : payload.length <= 0xFFFF ? 4 : 10;
+        ByteBuffer frame = ByteBuffer.allocate(header + payload.length);
+        frame.put((byte) (0x80 | opcode));
+        if (header == 2) {
+            frame.put((byte) payload.length);
+        } else if (header == 4) {
+            frame.put((byte) 126).putShort((short) payload.length);
+        } else {
+            frame.put((byte) 127).putLong(payload.length);
+        }
+        frame.put(payload).flip();
+        queue(conn, frame, opcode == WS_TEXT);
+    }
+    /**
+     * Queues a JSON error response
+     */
+    private void sendError(Connection conn, int status, String error, boolean keepAlive) {
+        sendJson(conn, status, "{\"error\":" + quote(error) + "}", keepAlive);
+    }
+    /**
+     * Queues a HTTP response with a JSON body
+     * @param conn      the connection to respond on
+     * @param status    the HTTP status code
+     * @param json      the body of the response
+     * @param keepAlive if false, the connection is closed after the response is written
+     */
+    private void sendJson(Connection conn, int status, String json, boolean keepAlive) {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        String head = "HTTP/1.1 " + status + " " + reason(status) + "\r\n"
+                + "Content-Type: application/json; charset=utf-8\r\n"
+                + "Content-Length: " + body.length + "\r\n"
+                + "Connection: " + (keepAlive ? "keep-alive" : "close") + "\r\n\r\n";
+        byte[] headBytes = head.getBytes(StandardCharsets.ISO_8859_1);
+        ByteBuffer response = ByteBuffer.allocate(headBytes.length + body.length);
+        response.put(headBytes).put(body).flip();
+        queue(conn, response, false);
+        if (!keepAlive) {
+            conn.closeAfterWrite = true;
+        }
+    }
+    /**
+     * Builds the JSON representation of a session and the responses of the latest request
+     */
+    private String sessionJson(HttpSession session) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"session\":").append(session.id)
+          .append(",\"token\":").append(quote(session.game.getToken()))
+          .append(",\"playing\":").append(session.game.isPlaying());
+        String hiddenWord = session.game.getHiddenWord();
+        if (hiddenWord != null) {
+            sb.append(",\"word\":").append(quote(hiddenWord))
+              .append(",\"tries\":").append(session.game.getTries());
+        }
+        sb.append(",\"guesses\":");
+        appendArray(sb, session.game.getGuesses());
+        sb.append(",\"responses\":");
+        appendArray(sb, responses);
+        return sb.append('}').toString();
+    }
+    /**
+     * Appends a list of strings as a JSON array
+     */
+    private static void appendArray(StringBuilder sb, List<String> strings) {
+        sb.append('[');
+        for (int i = 0; i < strings.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(quote(strings.get(i)));
+        }
+        sb.append(']');
+    }
+    /**
+     * Quotes and escapes a string as a JSON string
+     */
+    private static String quote(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+    private static String reason(int status) {
+        switch (status) {
+            case 200: return "OK";
+            case 201: return "Created";
+            case 400: return "Bad Request";
+            case 404: return "Not Found";
+            case 405: return "Method Not Allowed";
+            case 413: return "Payload Too Large";
+            case 426: return "Upgrade Required";
+            case 429: return "Too Many Requests";
+            default:  return "Not Implemented";
+        }
+    }
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) {
+                continue;
+            }
+            try {
+                params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"), URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+            } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+                // malformed parameters are ignored
+            }
+        }
+        return params;
+    }
+    private static String decode(ByteBuffer in, int offset, int length, Charset charset) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = in.get(offset + i);
+        }
+        return new String(bytes, charset);
+    }
+    /**
+     * Removes HTTP sessions that have not been used for 'SESSION_TIMEOUT' milliseconds
+     * @param now   the current time
+     */
+    private void removeIdleSessions(long now) {
+        Iterator<HttpSession> iterator = sessions.values().iterator();
+        while (iterator.hasNext()) {
+            HttpSession session = iterator.next();
+            if (now - session.lastUsed > SESSION_TIMEOUT) {
+                iterator.remove();
+                registry.unregister(session.game);
+            }
+        }
+    }
+    /**
+     * State kept for each open connection
+     */
+    private static class Connection {
+        private final SocketChannel channel;
+        private final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+        private final TokenBucket inbound;
+        private ByteBuffer in;
+        private int queued;
+        private boolean paused;
+        private boolean waiting;
+        private boolean webSocket;
+        private boolean closeAfterWrite;
+        private GameSession game;
+        private String lastState;
+
+        private Connection(SocketChannel channel, ByteBuffer in, TokenBucket inbound) {
+            this.channel = channel;
+            this.in = in;
+            this.inbound = inbound;
+        }
+    }
+    /**
+     * A game session played over HTTP, outliving the connections used to play it
+     */
+    private static class HttpSession {
+        private final long id;
+        private final GameSession game;
+        private long lastUsed;
+
+        private HttpSession(GameSession game) {
+            this.id = game.getId();
+            this.game = game;
+            this.lastUsed = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package server.net;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+/**
+ *  Estimates the number of distinct keys seen, in constant memory. Each key is hashed to one
+ * of 2^'precision' registers, which keeps the longest run of leading zeros seen in the rest
+ * of the hashes. With 2^12 registers the estimate is typically within 2%. Safe to use from any thread.
+ */
+class HyperLogLog {
+
+    private final int precision;
+    private final AtomicIntegerArray registers;
+
+    /**
+     * @param precision log2 of the number of registers
+     */
+    HyperLogLog(int precision) {
+        this.precision = precision;
+        this.registers = new AtomicIntegerArray(1 << precision);
+    }
+    /**
+     * Adds a key
+     * @param hash  hash of the key
+     */
+    void add(long hash) {
+        hash = mix(hash);
+        int index = (int) (hash >>> (64 - precision));
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        int current;
+        while (rank > (current = registers.get(index))) {
+            if (registers.compareAndSet(index, current, rank)) {
+                return;
+            }
+        }
+    }
+    /**
+     * @return  the estimated number of distinct keys added
+     */
+    long estimate() {
+        int m = registers.length();
+        double sum = 0;
+        int empty = 0;
+        for (int i = 0; i < m; i++) {
+            int register = registers.get(i);
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                empty++;
+            }
+        }
+        double estimate = 0.7213 / (1 + 1.079 / m) * m * m / sum;
+        if (estimate <= 2.5 * m && empty > 0) {
+            estimate = m * Math.log((double) m / empty);       // few keys, count the empty registers instead
+        }
+        return Math.round(estimate);
+    }
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,40 @@
+package server.net;
+
+import server.model.WordTemplate;
+/**
+ *  A head-to-head game between two players of a similar score, who guess the same word.
+ * The first player to complete the word wins, and the game of the other player ends.
+ */
+class Match {
+
+    private final GameSession first;
+    private final GameSession second;
+    private boolean decided;
+
+    Match(GameSession first, GameSession second) {
+        this.first = first;
+        this.second = second;
+    }
+    /**
+     * Starts the game of both players
+     * @param word          the word both players guess
+     * @param firstScore    the score of the first player when matched
+     * @param secondScore   the score of the second player when matched
+     */
+    void start(WordTemplate word, int firstScore, int secondScore) {
+        first.startMatch(this, word, secondScore);
+        second.startMatch(this, word, firstScore);
+    }
+    /**
+     * Called by a session when its player completed the word
+     * @param session   the session of the player
+     * @return          the opponent if the player won the match, null if the opponent was first
+     */
+    synchronized GameSession completed(GameSession session) {
+        if (decided) {
+            return null;
+        }
+        decided = true;
+        return session == first ? second : first;
+    }
+}
@@ -0,0 +1,232 @@
+package server.net;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import server.controller.ServerController;
+/**
+ *  Pairs waiting players with players of a similar score for head-to-head games.
+ * Waiting players are kept in one lock-free queue per score range, so players joining at the
+ * same time only contend when their scores are close. A player first looks for an opponent in
+ * its own range, and the search widens by one range on each side every 'WIDEN_INTERVAL'
+ * until an opponent is found or 'MAX_WAIT' has passed. The widening steps are deadlines on
+ * the 'GameClock', so waiting players need no thread of their own.
+ *
+ * Matched games are started on the clock thread, never while a session lock is held,
+ * so two sessions are never locked at once.
+ */
+class Matchmaker {
+
+    private final int   BUCKET_WIDTH    = 5;            // score points covered by one queue
+    private final int   BUCKETS         = 41;           // number of queues, centered on score 0
+    private final long  WIDEN_INTERVAL  = 2000;         // time before searching one more range on each side
+    private final long  MAX_WAIT        = 30000;        // latency budget, the longest a player waits for an opponent
+    private final long  RETRY_DELAY     = 1000;         // time before retrying a match while the words load
+
+    private final ServerController contr;
+    private final GameClock clock;
+    private final List<ConcurrentLinkedQueue<Ticket>> buckets;
+    private final LongAdder joined = new LongAdder();
+    private final LongAdder matched = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder left = new LongAdder();
+    private final LongAdder waiting = new LongAdder();
+    private final LongAdder totalWait = new LongAdder();
+    private final AtomicLong maxWait = new AtomicLong();
+
+    Matchmaker(ServerController controller, GameClock clock) {
+        this.contr = controller;
+        this.clock = clock;
+        this.buckets = new ArrayList<>(BUCKETS);
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+    /**
+     * Puts a player in the queue for a head-to-head game
+     * @param session   the session of the player
+     * @param score     the score of the player
+     * @return          the ticket of the player, used to leave the queue
+     */
+    Ticket join(GameSession session, int score) {
+        Ticket ticket = new Ticket(session, score, bucket(score));
+        joined.increment();
+        waiting.increment();
+        if (search(ticket, 0)) {
+            return ticket;
+        }
+        buckets.get(ticket.bucket).add(ticket);
+        // search again, in case a player of the same range joined before the ticket was queued
+        if (!search(ticket, 0) && !ticket.isDone()) {
+            clock.schedule(WIDEN_INTERVAL, () -> widen(ticket, 1));
+        }
+        return ticket;
+    }
+    /**
+     * Takes a player out of the queue, if it is still waiting
+     * @param ticket    the ticket returned by 'join', or null
+     */
+    void leave(Ticket ticket) {
+        if (ticket != null && ticket.end()) {
+            waiting.decrement();
+            left.increment();
+            buckets.get(ticket.bucket).remove(ticket);
+        }
+    }
+    /**
+     * @return  the matchmaking counters as a JSON object
+     */
+    String toJson() {
+        long pairs = matched.sum();
+        long players = pairs * 2;
+        long ended = players + expired.sum();
+        return "{\"waiting\":" + waiting.sum()
+                + ",\"joined\":" + joined.sum()
+                + ",\"matches\":" + pairs
+                + ",\"expired\":" + expired.sum()
+                + ",\"left\":" + left.sum()
+                + ",\"matchRate\":" + (ended == 0 ? 0 : (double) players / ended)
+                + ",\"averageWaitMillis\":" + (players == 0 ? 0 : totalWait.sum() / players)
+                + ",\"maxWaitMillis\":" + maxWait.get() + "}";
+    }
+    /**
+     * Widens the search of a waiting player, called on the clock thread
+     * @param ticket    the ticket of the player
+     * @param radius    the number of ranges to search on each side
+     */
+    private void widen(Ticket ticket, int radius) {
+        if (ticket.isDone()) {
+            return;
+        }
+        if (System.currentTimeMillis() - ticket.joinedAt >= MAX_WAIT) {
+            if (ticket.end()) {
+                waiting.decrement();
+                expired.increment();
+                buckets.get(ticket.bucket).remove(ticket);
+                ticket.session.push("No opponent found within " + MAX_WAIT / 1000 + " seconds, write 'MATCH' to try again");
+            }
+            return;
+        }
+        if (!search(ticket, radius) && !ticket.isDone()) {
+            clock.schedule(WIDEN_INTERVAL, () -> widen(ticket, radius + 1));
+        }
+    }
+    /**
+     * Looks for an opponent in the ranges around the players own, closest ranges first.
+     * The ticket is marked as searching, so the player can't be matched by another player
+     * at the same time, and is waiting again if no opponent is found.
+     * @param ticket    the ticket of the player
+     * @param radius    the number of ranges to search on each side
+     * @return          true if the player was matched
+     */
+    private boolean search(Ticket ticket, int radius) {
+        if (!ticket.state.compareAndSet(Ticket.WAITING, Ticket.SEARCHING)) {
+            return false;
+        }
+        for (int distance = 0; distance <= radius; distance++) {
+            Ticket opponent = poll(ticket.bucket - distance);
+            if (opponent == null && distance > 0) {
+                opponent = poll(ticket.bucket + distance);
+            }
+            if (opponent != null) {
+                ticket.state.set(Ticket.DONE);
+                buckets.get(ticket.bucket).remove(ticket);
+                match(ticket, opponent);
+                return true;
+            }
+        }
+        ticket.state.set(Ticket.WAITING);
+        return false;
+    }
+    /**
+     * Takes the first waiting player of a range, removing players no longer waiting on the way
+     * @return  the taken ticket, or null if no player of the range is waiting
+     */
+    private Ticket poll(int bucket) {
+        if (bucket < 0 || bucket >= BUCKETS) {
+            return null;
+        }
+        Iterator<Ticket> tickets = buckets.get(bucket).iterator();
+        while (tickets.hasNext()) {
+            Ticket candidate = tickets.next();
+            if (candidate.state.compareAndSet(Ticket.WAITING, Ticket.DONE)) {
+                tickets.remove();
+                return candidate;
+            }
+            if (candidate.isDone()) {
+                tickets.remove();
+            }
+        }
+        return null;
+    }
+    private void match(Ticket first, Ticket second) {
+        long now = System.currentTimeMillis();
+        for (Ticket ticket : new Ticket[] {first, second}) {
+            long wait = now - ticket.joinedAt;
+            totalWait.add(wait);
+            maxWait.accumulateAndGet(wait, Math::max);
+        }
+        waiting.add(-2);
+        matched.increment();
+        Match match = new Match(first.session, second.session);
+        clock.schedule(0, () -> start(match, first.score, second.score));
+    }
+    /**
+     * Starts a matched game on the clock thread, once the words are loaded
+     */
+    private void start(Match match, int firstScore, int secondScore) {
+        if (!contr.isReady()) {
+            clock.schedule(RETRY_DELAY, () -> start(match, firstScore, secondScore));
+            return;
+        }
+        match.start(contr.getTemplate(), firstScore, secondScore);
+    }
+    private int bucket(int score) {
+        int bucket = Math.floorDiv(score, BUCKET_WIDTH) + BUCKETS / 2;
+        return Math.max(0, Math.min(BUCKETS - 1, bucket));
+    }
+    /**
+     * A player waiting for an opponent. A ticket ends exactly once: when the player is matched,
+     * leaves the queue or waited too long. While the player searches for an opponent, other
+     * players can't take the ticket.
+     */
+    static class Ticket {
+        private static final int WAITING = 0;
+        private static final int SEARCHING = 1;
+        private static final int DONE = 2;
+
+        private final GameSession session;
+        private final int score;
+        private final int bucket;
+        private final long joinedAt = System.currentTimeMillis();
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+
+        private Ticket(GameSession session, int score, int bucket) {
+            this.session = session;
+            this.score = score;
+            this.bucket = bucket;
+        }
+        /**
+         * Ends a waiting ticket, waiting for a search of its player to finish first
+         * @return  true if this call ended the ticket
+         */
+        private boolean end() {
+            while (true) {
+                if (state.compareAndSet(WAITING, DONE)) {
+                    return true;
+                }
+                if (state.get() == DONE) {
+                    return false;
+                }
+                Thread.yield();
+            }
+        }
+        private boolean isDone() {
+            return state.get() == DONE;
+        }
+    }
+}
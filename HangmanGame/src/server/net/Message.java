@@ -0,0 +1,32 @@
+package server.net;
+
+import common.Constants;
+import common.ServerMessageTypes;
+/**
+ * Class for handling different parts of a message, this includes:
+ * Message type, message body and the origianl fullMsg
+ */
+class Message {
+    ServerMessageTypes type;
+    String body;
+    String fullMsg;
+
+    Message(String fullMessage) {
+        parse(fullMessage);
+        this.fullMsg = fullMessage;
+    }
+
+    private void parse(String fullMessage) {
+        try {
+            String[] message = fullMessage.split(Constants.DELIMETER);
+            type = ServerMessageTypes.valueOf(message[Constants.TYPE_INDEX].toUpperCase());
+            if (message.length > Constants.MESSAGE_INDEX) {
+                body = message[Constants.MESSAGE_INDEX].toLowerCase();
+            } else {
+                body = null;
+            }
+        } catch (Throwable throwable) {
+            throw new IllegalArgumentException("Error when parsing message " + throwable);
+        }
+    }
+}
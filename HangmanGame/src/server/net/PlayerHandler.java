@@ -1,284 +1,412 @@
 package server.net;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
+import server.controller.GameTrace;
 import server.controller.ServerController;
+import server.log.ServerLog;
 import common.Constants;
 import common.ServerMessageTypes;
+import common.UnixSockets;
 /**
  *  Class for handling all player actions and responses
- * for playing the hangman game
+ * for playing the hangman game, connected over a TCP socket or a unix domain socket channel
  * @author Perttu Jääskeläinen
  */
 public class PlayerHandler implements Runnable {
-    
-    private final Socket playerSocket;
+
+    private final Closeable playerConnection;    // the 'Socket', or the 'SocketChannel' of a unix domain socket
     private final ServerController contr;
-    private String currentWord;
-    private String hiddenWord;
-    private int currentScore;
-    private int tries;
+    private final GameClock clock;
+    private final Matchmaker matchmaker;
+    private final Throttle throttle;
+    private final SessionRegistry registry;
+    private final TokenBucket inbound;
+    private final TrafficCapture capture;
+    private volatile GameSession session;
+    private ClientMessenger client;
+    private StreamMultiplexer streams;          // created by the first 'STREAM' frame
+    private String lastState;
     private volatile boolean connected;
-    private boolean playing;
-    private List<String> guesses;
-    
-    public PlayerHandler (ServerController controller, Socket player) {
-        this.playerSocket = player; 
+
+    public PlayerHandler (ServerController controller, Throttle throttle, SessionRegistry registry, GameClock clock,
+            Matchmaker matchmaker, TrafficCapture capture, Socket player) {
+        this(controller, throttle, registry, clock, matchmaker, capture, (Closeable) player);
+    }
+    public PlayerHandler (ServerController controller, Throttle throttle, SessionRegistry registry, GameClock clock,
+            Matchmaker matchmaker, TrafficCapture capture, SocketChannel player) {
+        this(controller, throttle, registry, clock, matchmaker, capture, (Closeable) player);
+    }
+    private PlayerHandler (ServerController controller, Throttle throttle, SessionRegistry registry, GameClock clock,
+            Matchmaker matchmaker, TrafficCapture capture, Closeable player) {
+        this.playerConnection = player;
         this.contr = controller;
+        this.clock = clock;
+        this.matchmaker = matchmaker;
+        this.session = new GameSession(controller, clock, matchmaker);
+        this.throttle = throttle;
+        this.registry = registry;
+        this.inbound = throttle.newSessionBucket();
+        this.capture = capture;
         this.connected = true;
-        this.currentScore = 0;
     }
     /**
-     * Closes the user socket, ending the life of the running 
+     * Closes the user socket, ending the life of the running
      * 'PlayerHandler' thread and closing the socket.
      */
     private void disconnect() {
+        registry.unregister(session);
         try {
-            playerSocket.close();
+            playerConnection.close();
         } catch (IOException e) {
-            e.printStackTrace();
+            ServerLog.warn("Error when closing player connection", session.getId(), e);
         }
         connected = false;
     }
     /**
-     * returns true if the user has guessed all letters correctly
-     * @return  true or false depending on if the user is done
-     */
-    private boolean completedWord() {
-        return currentWord.equals(hiddenWord);
-    }
-    /**
-     * Message when succesfully guessing a word
-     * @return  the gamedone screen text
-     */
-    private String gameDone() {
-        currentScore++;
-        playing = false;
-        String response = "Congratulations, you completed the word: " + currentWord + " with " + tries + " tries remaining. "
-                + "Your new score is: " + currentScore + ". Write 'NEWWORD' to play again";
-        return response;
-    }
-    /**
-     * Message when running out of tries when guessing the word
-     * @return      the gameover screen text
-     */
-    private String gameOver() {
-        currentScore--;
-        playing = false;
-        String response = "Game over. The correct word was: " + currentWord + ", your new score is: " + currentScore + ". Write 'NEWWORD' to play again";
-        return response;
-    }
-    /**
-     * Generates a response for a correct guess, if the word is now complete,
-     * generate a gameDone message.
-     * @return      a proper message for a succesful guess
+     * Creates a new ClientMessenger object for handling input and output streams from the user
+     * @param client    The client socket or channel to read and write from/to
+     * @param flush     If autoflush is to be used when writing to the user
+     * @return          a new ClientMessenger object
+     * @throws IOException  if reading from the clientSocket's input or output stream is unsuccesful
      */
-    private String succesfulGuess() {
-        if (completedWord()) {
-            return gameDone();
+    private ClientMessenger newMessenger(Closeable client, boolean flush) throws IOException {
+        try {
+            InputStream in;
+            OutputStream out;
+            if (client instanceof SocketChannel) {
+                in = UnixSockets.in((SocketChannel) client);
+                out = UnixSockets.out((SocketChannel) client);
+            } else {
+                in = ((Socket) client).getInputStream();
+                out = ((Socket) client).getOutputStream();
+            }
+            BufferedReader clientReader = new BufferedReader(new InputStreamReader(in));
+            PrintWriter clientWriter = new PrintWriter(out, flush);
+            return new ClientMessenger(clientReader, clientWriter, connected, throttle, capture, this::disconnect);
+        } catch (IOException e) {
+            throw new IOException("Error when creating output and inputstreams: " + e);
         }
-        String response = ("Guess succesful! Current word: " + hiddenWord + ", tries remaining: " + tries);
-        return response;
-    }
-    /**
-     * String when a guess is unsuccesful (incorrect guess, not to be confused with invalid guess)
-     * @return      response for an unsuccesful guess
-     */
-    private String unsuccesfulGuess() {
-        String response = ("Guess unsuccesful! Current word: " + hiddenWord + ", tries remaining: " + tries);
-        return response;
     }
     /**
-     * String when a guess is invalid
-     * @return  response for an invalid guess
-     */
-    private String invalidGuess() {
-        String response = "Invalid guess, either guess a letter or the entire word";
-        return response;
-    }
-    /**
-     * Initiates a new game, generating a new word from the server
-     * and replacing existing values with initial values.
-     * Hidden word is replaced with dashes (-) equal to the word to be guessed's length,
-     * currentWord is replaced with the new word and tries is replaced the length of 
-     * the new word (word of length 5 has 5 guesses)
+     * Main method run by the users serverside 'PlayerHandler' thread.
+     * The thread stays in the while loop until a disconnect is initiated,
+     * after which it simply exits. Lines that are not understood are answered with a 'RESPONSE'
+     * and logged, and the player is disconnected however the thread exits.
+     * Every line is traced as a 'GameTrace.Command' event.
+     * 'STREAM' frames are handed to the 'StreamMultiplexer' instead, which processes them once
+     * every frame received so far is queued, taking turns between the streams.
      */
-    private void newGame() {
-        currentWord = contr.getWord();
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < currentWord.length(); i++) {
-            sb.append("-");
+    @Override
+    public void run() {
+        try {
+            boolean autoFlush = false;
+            client = newMessenger(playerConnection, autoFlush);
+            registry.register(session, false);
+            session.setListener(this::sendPushed);
+            client.send(ServerMessageTypes.SESSION, session.getToken());
+            List<String> responses = new ArrayList<>();
+            while (connected) {
+                String line = client.readLine();
+                if (line == null) {
+                    disconnect();
+                    break;
+                }
+                if (StreamMultiplexer.isFrame(line)) {
+                    queueFrame(line);
+                    continue;
+                }
+                if (streams != null && streams.hasQueued()) {
+                    streams.process();
+                }
+                GameTrace.Command event = new GameTrace.Command();
+                event.begin();
+                long start = event.isEnabled() ? System.nanoTime() : 0;
+                if (!throttle.admit(inbound)) {
+                    client.respond(Throttle.THROTTLED);
+                    event.end();
+                    if (event.shouldCommit()) {
+                        trace(event, line, start, start, 1);
+                        event.throttled = true;
+                        event.commit();
+                    }
+                    continue;
+                }
+                boolean stay = true;
+                GameSession resumed = registry.resumeLine(line);
+                if (resumed != null) {
+                    registry.unregister(session);
+                    session = resumed;
+                    session.setListener(this::sendPushed);
+                    client.send(ServerMessageTypes.SESSION, session.getToken());
+                    session.resumed(responses);
+                } else {
+                    try {
+                        stay = session.process(line, responses);
+                    } catch (IllegalArgumentException e) {
+                        ServerLog.warn("Malformed line", session.getId(), e.getMessage());
+                        responses.add(e.getMessage());
+                    }
+                }
+                long dispatched = event.isEnabled() ? System.nanoTime() : 0;
+                int responseCount = responses.size();
+                for (String response : responses) {
+                    client.respond(response);
+                }
+                responses.clear();
+                sendState(true);
+                event.end();
+                if (event.shouldCommit()) {
+                    trace(event, line, start, dispatched, responseCount);
+                    event.commit();
+                }
+                if (!stay) {
+                    client.drain();
+                    disconnect();
+                }
+            }
+        } catch (IOException e) {
+            ServerLog.info("Disconnecting", session.getId());
+        } catch (RuntimeException e) {
+            ServerLog.error("Error when serving player", e);
+        } finally {
+            if (connected) {
+                disconnect();
+            }
+            if (client != null) {
+                client.disconnected();
+            }
+            if (streams != null) {
+                streams.close();
+            }
         }
-        hiddenWord = sb.toString();
-        tries = currentWord.length();
-        guesses = new ArrayList<String>();
     }
     /**
-     * checks if the response from the model was succesful (correct guess)
-     * or unsuccesful (incorrect guess)
-     * @param newHidden     the updated hidden word received from the model
-     * @return              true or false, (correct or incorrect guess)
+     * Queues a frame for its stream, processing the queued frames once no more lines have been
+     * received or the batch is full
+     * @param frame     the 'STREAM' frame received from the player
+     * @throws IOException  if the socket is closed
      */
-    private boolean processResponse(String newHidden) {
-        if (newHidden.equals(hiddenWord)) {
-            return false;
-        } else  {
-            return true;
+    private void queueFrame(String frame) throws IOException {
+        if (streams == null) {
+            streams = new StreamMultiplexer(contr, clock, matchmaker, throttle, registry, client::send);
         }
-    }
-    /**
-     * Checks if the given string only contains characters
-     * @param s the string to check 
-     * @return true if only characters are found, else false
-     */
-    private boolean isLetter(String s) {
-        for (char c : s.toCharArray()) {
-            if (!Character.isLetter(c)) {
-                return false;
-            }
+        streams.queue(frame);
+        if (streams.isFull() || !client.ready()) {
+            streams.process();
+            client.setStreams(streams.size());
         }
-        return true;
     }
     /**
-     * Prints out user information
+     * Fills in a command event that will be recorded
+     * @param event         the event
+     * @param line          the line received from the player
+     * @param start         'System.nanoTime' when the line was read
+     * @param dispatched    'System.nanoTime' when the line was processed
+     * @param responses     the number of responses queued for the line
      */
-    private String getInfo() {
-        String response = "Current word is " + currentWord.length() + " characters. You have " + tries + " guesses remaining";
-        return response;
+    private void trace(GameTrace.Command event, String line, long start, long dispatched, int responses) {
+        int delimeter = line.indexOf(Constants.DELIMETER);
+        event.sessionId = session.getId();
+        event.command = (delimeter < 0 ? line : line.substring(0, delimeter)).toUpperCase();
+        event.lineLength = line.length();
+        event.dispatchTime = dispatched - start;
+        event.respondTime = System.nanoTime() - dispatched;
+        event.responses = responses;
     }
     /**
-     * Processes a user guess, saving it in a list of past guesses to assure non-multiple 
-     * same letter/word guesses.
-     * @param guess     the guessed letter/word by the user
-     * @return          a reply depending on the result of the guess
+     * @return  the id of the session currently played over this connection
      */
-    private String guess(String guess) {
-        if (!isLetter(guess)) {
-            return "Incorrect format, please only use letters when guessing";
-        }
-        if (guesses.contains(guess)) {
-            return "You already made the same guess, try a new letter or word!";
-        }
-        guesses.add(guess);
-        String newHidden = contr.processGuess(guess, currentWord, hiddenWord);
-        if (newHidden == null) {
-            return invalidGuess();
-        }
-        boolean succesful = processResponse(newHidden);
-        if (succesful) {
-            hiddenWord = newHidden;
-            return succesfulGuess();
-        } else {
-            tries--;
-            if (tries == 0) {
-                return gameOver();
-            } else {
-                return unsuccesfulGuess();
-            }
-        }
+    long getSessionId() {
+        return session.getId();
     }
     /**
-     * Creates a new ClientMessenger object for handling input and output streams from the user
-     * @param client    The client socket to read and write from/to
-     * @param flush     If autoflush is to be used when writing to the user
-     * @return          a new ClientMessenger object
-     * @throws IOException  if reading from the clientSocket's input or output stream is unsuccesful
+     * Sends the state of the game if the player has subscribed to it and it changed since it was last sent
+     * @param mayWait   false if the state must be queued without waiting for the writer
      */
-    private ClientMessenger newMessenger(Socket client, boolean flush) throws IOException {
-        try {
-            BufferedReader clientReader = new BufferedReader(new InputStreamReader(client.getInputStream()));
-            PrintWriter clientWriter = new PrintWriter(client.getOutputStream(), flush); 
-            return new ClientMessenger(clientReader, clientWriter, connected);
-        } catch (IOException e) {
-            throw new IOException("Error when creating output and inputstreams: " + e);
+    private synchronized void sendState(boolean mayWait) {
+        if (session.hasStateUpdates()) {
+            String state = session.getState();
+            if (!state.equals(lastState)) {
+                lastState = state;
+                client.send(ServerMessageTypes.STATE, state, mayWait);
+            }
         }
     }
     /**
-     * Main method run by the users serverside 'PlayerHandler' thread.
-     * The thread stays in the while loop until a disconnect is initiated,
-     * after which it simply exits.
+     * Sends the responses pushed to the session by the game clock, called on the clock thread.
+     * The responses are queued without waiting for the writer, so a player who stops reading
+     * can not hold up the clock.
      */
-    @Override
-    public void run() {
-        try {
-            boolean autoFlush = true;
-            ClientMessenger client = newMessenger(playerSocket, autoFlush);
-            while (connected) {
-                Message msg = new Message(client.readLine());
-                switch (msg.type) {
-                    case NEWWORD:
-                        if (!playing) {
-                            client.respond("Starting new game");
-                            playing = true;
-                            newGame();
-                            client.respond(getInfo());
-                        } else {
-                            client.respond("Already playing. Start a new game anyway? YES/NO (Score will be decremented if a new game is started)");
-                            String line = client.readLine().toUpperCase();
-                            if (line.contains("YES")) {
-                                client.respond("Starting new game");
-                                newGame();
-                            } else {
-                                client.respond("Continuing");
-                                client.respond(getInfo());
-                            }
-                        }
-                        break;
-                    case DISCONNECT:
-                        disconnect();
-                        break;
-                    case GUESS:
-                        if (!playing) {
-                            client.respond("Currently not playing. Write 'NEWWORD' to start a new game");
-                            break;
-                        }
-                        if (msg.body == null) {
-                            client.respond("error when parsing msg body, please try again");
-                        } else {
-                            client.respond(guess(msg.body));
-                        }
-                        break;
-                    case RESPONSE:
-                        client.respond("Illegal type - should only be used by the server for responses");
-                        break;
-                    default:
-                        throw new IllegalArgumentException("Error when parsing message: " + msg.fullMsg);
-                }
-            }
-            client.disconnected();
-        } catch (IOException e) {
-            disconnect();
-            System.out.println("Disconnecting..");
+    private void sendPushed() {
+        List<String> pushed = new ArrayList<>();
+        session.takePending(pushed);
+        for (String response : pushed) {
+            client.send(ServerMessageTypes.RESPONSE, response, false);
         }
+        sendState(false);
     }
     /**
      * Class used by the PlayerHandler to message and read from the user.
-     * The specified BufferedReader and PrintWriter need to be pre-defined 
+     * The specified BufferedReader and PrintWriter need to be pre-defined
      * from the user socket when creating a new ClientMessenger.
+     * Responses are queued and written by a separate writer thread, so a user who stops
+     * reading can not block the PlayerHandler thread. The queue is bounded, and what happens
+     * when it is full is decided by the throttles 'OverflowPolicy'.
+     * If the traffic is captured, every line read and every response queued is recorded.
      */
-    private static class ClientMessenger {
-        
+    private static class ClientMessenger implements Runnable {
+
+        private static final long DRAIN_TIMEOUT = 5000;    // max time to wait for queued responses when disconnecting
+
+        private final ArrayDeque<String> outbound = new ArrayDeque<>();
+        private final Throttle throttle;
+        private final Runnable onOverflow;
+        private final TrafficCapture capture;
+        private final int connection;       // number of the connection in the capture
         private BufferedReader clientReader;
         private PrintWriter clientWriter;
+        private int queuedChars;
+        private volatile int streams = 1;   // sessions carried by the connection, scaling how much may be queued
         private volatile boolean connected;
-        
-        private ClientMessenger(BufferedReader reader, PrintWriter writer, boolean connected) {
+
+        private ClientMessenger(BufferedReader reader, PrintWriter writer, boolean connected, Throttle throttle,
+                TrafficCapture capture, Runnable onOverflow) {
             clientReader = reader;
             clientWriter = writer;
             this.connected = connected;
+            this.throttle = throttle;
+            this.capture = capture;
+            this.connection = capture != null ? capture.open() : 0;
+            this.onOverflow = onOverflow;
+            Thread writerThread = new Thread(this);
+            writerThread.setDaemon(true);
+            writerThread.start();
         }
         /**
-         * Send a response to the user in correct format
+         * Queue a response to the user in correct format
          * @param message   The message to be sent
          */
         private void respond(String message) {
-            if (connected) {
-                clientWriter.println(ServerMessageTypes.RESPONSE.toString() + Constants.DELIMETER + message);
+            send(ServerMessageTypes.RESPONSE, message);
+        }
+        /**
+         * Queue a message of the given type to the user
+         * @param type      The type of the message
+         * @param message   The message to be sent
+         */
+        private void send(ServerMessageTypes type, String message) {
+            send(type, message, true);
+        }
+        /**
+         * Queue a message of the given type to the user
+         * @param type      The type of the message
+         * @param message   The message to be sent
+         * @param mayWait   false if the message is queued beyond the limit instead of waiting, when the policy is 'PAUSE'
+         */
+        private void send(ServerMessageTypes type, String message, boolean mayWait) {
+            String line = type.toString() + Constants.DELIMETER + message;
+            boolean overflow = false;
+            synchronized (this) {
+                if (!connected) {
+                    return;
+                }
+                if (queuedChars + line.length() > throttle.maxOutbound(streams)) {
+                    throttle.overflowed(throttle.policy());
+                    switch (throttle.policy()) {
+                        case DROP:
+                            return;
+                        case DISCONNECT:
+                            overflow = true;
+                            break;
+                        default:
+                            // stop reading from the user until the writer has caught up
+                            while (mayWait && connected && queuedChars > 0 && queuedChars + line.length() > throttle.maxOutbound(streams)) {
+                                try {
+                                    wait();
+                                } catch (InterruptedException e) {
+                                    Thread.currentThread().interrupt();
+                                    return;
+                                }
+                            }
+                            break;
+                    }
+                }
+                if (!overflow) {
+                    outbound.add(line);
+                    queuedChars += line.length();
+                    notifyAll();
+                    if (capture != null) {
+                        capture.outbound(connection, line);
+                    }
+                }
+            }
+            if (overflow) {
+                onOverflow.run();
+            }
+        }
+        /**
+         * Writes queued responses to the user, flushing once for every batch of responses
+         */
+        @Override
+        public void run() {
+            List<String> batch = new ArrayList<>();
+            while (true) {
+                synchronized (this) {
+                    while (connected && outbound.isEmpty()) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (!connected) {
+                        return;
+                    }
+                    batch.addAll(outbound);
+                    outbound.clear();
+                }
+                int written = 0;
+                for (String line : batch) {
+                    clientWriter.println(line);
+                    written += line.length();
+                }
+                clientWriter.flush();
+                batch.clear();
+                synchronized (this) {
+                    queuedChars -= written;
+                    notifyAll();
+                }
+                if (clientWriter.checkError()) {
+                    disconnected();
+                    return;
+                }
+            }
+        }
+        /**
+         * Waits until every queued response has been written, or until 'DRAIN_TIMEOUT' has passed
+         */
+        private synchronized void drain() {
+            long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT;
+            long remaining = DRAIN_TIMEOUT;
+            while (connected && queuedChars > 0 && remaining > 0) {
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                remaining = deadline - System.currentTimeMillis();
             }
         }
         /**
@@ -289,42 +417,35 @@ public class PlayerHandler implements Runnable {
         private String readLine() throws IOException {
             if (!connected)
                 return null;
-            return clientReader.readLine();
+            String line = clientReader.readLine();
+            if (capture != null && line != null) {
+                capture.inbound(connection, line);
+            }
+            return line;
         }
         /**
-         * Change the boolean to false when disconnected, 
-         * preventing further reads and writes
+         * @return  true if a line has been received that has not been read yet
+         * @throws IOException  if the socket is closed
          */
-        private void disconnected() {
-            connected = false;
+        private boolean ready() throws IOException {
+            return connected && clientReader.ready();
         }
-    }
-    /**
-     * Class for handling different parts of a message, this includes:
-     * Message type, message body and the origianl fullMsg
-     */
-    private static class Message {
-        private ServerMessageTypes type;
-        private String body;
-        private String fullMsg;
-
-        private Message(String fullMessage) {
-            parse(fullMessage);
-            this.fullMsg = fullMessage;
+        /**
+         * @param streams   the number of sessions carried by the connection
+         */
+        private void setStreams(int streams) {
+            this.streams = Math.max(1, streams);
         }
-
-        private void parse(String fullMessage) {
-            try {
-                String[] message = fullMessage.split(Constants.DELIMETER);
-                type = ServerMessageTypes.valueOf(message[Constants.TYPE_INDEX].toUpperCase());
-                if (message.length > Constants.MESSAGE_INDEX) {
-                    body = message[Constants.MESSAGE_INDEX].toLowerCase();
-                } else {
-                    body = null;
-                }
-            } catch (Throwable throwable) {
-                throw new IllegalArgumentException("Error when parsing message " + throwable);
+        /**
+         * Change the boolean to false when disconnected,
+         * preventing further reads and writes
+         */
+        private synchronized void disconnected() {
+            if (connected && capture != null) {
+                capture.close(connection);
             }
+            connected = false;
+            notifyAll();
         }
     }
 }
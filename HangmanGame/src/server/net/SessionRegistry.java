@@ -0,0 +1,195 @@
+package server.net;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import server.controller.ServerController;
+import server.log.ServerLog;
+import common.Constants;
+import common.ServerMessageTypes;
+/**
+ *  Keeps track of every live game session, so the sessions can be saved to a snapshot when
+ * the server is drained and restored when it starts again. Restored sessions wait in the
+ * registry until their player resumes them, for at most 'RESUME_TIMEOUT', after which they
+ * are ended like sessions of idle players.
+ *
+ * The snapshot is written as:
+ *  int magic, int number of sessions, then for every session
+ *  byte 1 if played over HTTP, followed by the session as written by 'GameSession.save'
+ */
+class SessionRegistry {
+
+    private static final int    MAGIC           = 0x48534e32;   // 'HSN2'
+    private static final long   RESUME_TIMEOUT  = 1800000;      // time a restored session waits for its player
+
+    private final ConcurrentHashMap<Long, Entry> live = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Entry> restored = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a session that is being played
+     * @param session   the session
+     * @param http      true if the session is played over HTTP, which resumes sessions by 'resumeHttp'
+     */
+    void register(GameSession session, boolean http) {
+        live.put(session.getId(), new Entry(session, http));
+    }
+    /**
+     * Removes a session that is no longer played, stopping its deadlines
+     * @param session   the session
+     */
+    void unregister(GameSession session) {
+        live.remove(session.getId());
+        session.close();
+    }
+    /**
+     * Resumes the session named by a 'RESUME' line from a player
+     * @param line  the line received from the player
+     * @return      the resumed session, or null if the line is not a 'RESUME' line or no restored session has its token
+     */
+    GameSession resumeLine(String line) {
+        String prefix = ServerMessageTypes.RESUME + Constants.DELIMETER;
+        if (line == null || !line.regionMatches(true, 0, prefix, 0, prefix.length())) {
+            return null;
+        }
+        return resume(line.substring(prefix.length()));
+    }
+    /**
+     * Resumes a session restored from a snapshot, making it live again
+     * @param token     the token of the session, as given by 'GameSession.getToken'
+     * @return          the session, or null if no restored session has the token
+     */
+    GameSession resume(String token) {
+        try {
+            String[] parts = token.split(":");
+            long id = Long.parseLong(parts[0].trim());
+            long secret = Long.parseLong(parts[1].trim());
+            Entry entry = restored.get(id);
+            if (entry == null || entry.http || !entry.session.hasSecret(secret) || !restored.remove(id, entry)) {
+                return null;
+            }
+            live.put(id, entry);
+            return entry.session;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+    /**
+     * Resumes a restored HTTP session, named by the parts of its token
+     * @param id        the id of the session
+     * @param secret    the secret of the session
+     * @return          the session, or null if no restored HTTP session has the id and secret
+     */
+    GameSession resumeHttp(long id, long secret) {
+        Entry entry = restored.get(id);
+        if (entry == null || !entry.http || !entry.session.hasSecret(secret) || !restored.remove(id, entry)) {
+            return null;
+        }
+        live.put(id, entry);
+        return entry.session;
+    }
+    /**
+     * Saves every live and not yet resumed session to a snapshot. Saved sessions stop
+     * accepting guesses. The snapshot is written to a temporary file and then moved in
+     * place, so a failed save never leaves a partial snapshot.
+     * @param path  the snapshot file
+     * @return      the number of saved sessions
+     * @throws IOException  if the snapshot can not be written
+     */
+    int save(Path path) throws IOException {
+        long start = System.nanoTime();
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        int count = 0;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Channels.newOutputStream(channel), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(0);                        // number of sessions, written last
+            for (ConcurrentHashMap<Long, Entry> sessions : Arrays.asList(live, restored)) {
+                for (Entry entry : sessions.values()) {
+                    if (entry.session.save(out, entry.http)) {
+                        count++;
+                    }
+                }
+            }
+            out.flush();
+            channel.write(ByteBuffer.allocate(4).putInt(0, count), 4);
+            channel.force(false);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        ServerLog.info("Saved sessions", count + " to " + path + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+        return count;
+    }
+    /**
+     * Restores every session of a snapshot, reading the memory-mapped snapshot in one pass.
+     * The snapshot is deleted once restored, so it is never restored twice.
+     * @param path          the snapshot file
+     * @param controller    the controller used by the restored sessions
+     * @param clock         the clock timing the restored sessions
+     * @param matchmaker    the matchmaker pairing the restored sessions
+     * @return              the number of restored sessions
+     * @throws IOException  if the snapshot can not be read
+     */
+    int restore(Path path, ServerController controller, GameClock clock, Matchmaker matchmaker) throws IOException {
+        long start = System.nanoTime();
+        int count;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not a session snapshot: " + path);
+            }
+            count = in.getInt();
+            for (int i = 0; i < count; i++) {
+                boolean http = in.get() == 1;
+                GameSession session = GameSession.restore(in, controller, clock, matchmaker);
+                restored.put(session.getId(), new Entry(session, http));
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt session snapshot: " + path, e);
+        }
+        Files.delete(path);
+        clock.schedule(RESUME_TIMEOUT, this::expireRestored);
+        ServerLog.info("Restored sessions", count + " from " + path + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+        return count;
+    }
+    /**
+     * Ends every restored session that was not resumed, releasing its slot of the session
+     * store, so it is neither kept nor saved to the next snapshot. Run 'RESUME_TIMEOUT' after
+     * the sessions were restored
+     * @return  the number of ended sessions
+     */
+    int expireRestored() {
+        int count = 0;
+        for (Entry entry : restored.values()) {
+            if (restored.remove(entry.session.getId(), entry)) {
+                entry.session.close();
+                count++;
+            }
+        }
+        if (count > 0) {
+            ServerLog.info("Ended restored sessions that were not resumed", String.valueOf(count));
+        }
+        return count;
+    }
+    /**
+     * A registered session, and how it is played
+     */
+    private static class Entry {
+        private final GameSession session;
+        private final boolean http;
+
+        private Entry(GameSession session, boolean http) {
+            this.session = session;
+            this.http = http;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package server.net;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import server.model.DictionaryBuilder;
+/**
+ *  Off-heap store for the game state of every session. The state of a session is packed into
+ * a fixed-width slot of a direct buffer, so a million sessions cost 64 MB outside the heap
+ * instead of a handful of strings and lists each on the heap, and the garbage collector never
+ * has to trace them. The slot also holds the state the 'BotDetector' keeps for the session.
+ *
+ * A slot is laid out as:
+ *  int word id, int score, long revealed letters (bit i set if letter i of the word is shown),
+ *  int guessed letters a-z (bit 0 is 'a'), long start time, short tries,
+ *  short guess limit and short round limit in seconds, byte flags, byte last guessed letter,
+ *  long time of the last guess (nanos), float average and float deviation of the time between
+ *  guesses (millis), int hash of the opening guesses of the game, short guesses of the session,
+ *  byte guesses of the game, byte letters guessed in order in the game
+ *
+ * Words are interned once and referred to by id, so a slot never holds a string. Slots are
+ * handed out from chunks of 'CHUNK_SLOTS', and slots of closed sessions are reused.
+ * A slot must only be read and written while holding the lock of the session owning it.
+ */
+class SessionStore {
+
+    static final int    PLAYING         = 1;
+    static final int    AWAITING        = 2;
+    static final int    STATE_UPDATES   = 4;
+    static final int    HAS_WORD        = 8;
+    static final int    SUSPECT         = 16;
+    static final int    ORDERED         = 32;       // the game is guessed in order, cleared with every new word
+    static final int    COMMON_OPENING  = 64;       // the game has a common opening, cleared with every new word
+
+    private static final int    WORD         = 0;
+    private static final int    SCORE        = 4;
+    private static final int    REVEALED     = 8;
+    private static final int    GUESSED      = 16;
+    private static final int    START        = 20;
+    private static final int    TRIES        = 28;
+    private static final int    GUESS_LIMIT  = 30;
+    private static final int    ROUND_LIMIT  = 32;
+    private static final int    FLAGS        = 34;
+    private static final int    LAST_LETTER  = 35;
+    private static final int    LAST_GUESS   = 40;
+    private static final int    INTERVAL     = 48;
+    private static final int    DEVIATION    = 52;
+    private static final int    OPENING      = 56;
+    private static final int    GUESSES      = 60;
+    private static final int    GAME_GUESSES = 62;
+    private static final int    IN_ORDER     = 63;
+    private static final int    SLOT_SIZE    = 64;                  // padded to keep the longs 8-byte aligned
+    private static final int    CHUNK_BITS   = 16;
+    private static final int    CHUNK_SLOTS  = 1 << CHUNK_BITS;     // slots per direct buffer, 4 MB each
+
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    private int[] free = new int[64];
+    private int freeCount;
+    private int nextSlot;
+    private int used;
+    private final ConcurrentHashMap<String, Integer> wordIds = new ConcurrentHashMap<>();
+    private volatile String[] words = new String[1024];
+    private int wordCount;
+
+    /**
+     * Takes a slot for a new session, cleared to zero
+     * @return  the slot
+     */
+    synchronized int allocate() {
+        int slot;
+        if (freeCount > 0) {
+            slot = free[--freeCount];
+        } else {
+            slot = nextSlot++;
+            if ((slot >>> CHUNK_BITS) == chunks.length) {
+                ByteBuffer[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+                grown[chunks.length] = ByteBuffer.allocateDirect(CHUNK_SLOTS * SLOT_SIZE);
+                chunks = grown;
+            }
+        }
+        ByteBuffer chunk = chunk(slot);
+        int base = base(slot);
+        for (int i = 0; i < SLOT_SIZE; i += 8) {
+            chunk.putLong(base + i, 0);
+        }
+        used++;
+        return slot;
+    }
+    /**
+     * Returns the slot of a closed session, to be reused by a new session
+     * @param slot  the slot
+     */
+    synchronized void release(int slot) {
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, free.length * 2);
+        }
+        free[freeCount++] = slot;
+        used--;
+    }
+    /**
+     * @return  the store counters as a JSON object
+     */
+    synchronized String toJson() {
+        return "{\"sessions\":" + used
+                + ",\"slots\":" + nextSlot
+                + ",\"offHeapBytes\":" + (long) chunks.length * CHUNK_SLOTS * SLOT_SIZE
+                + ",\"words\":" + wordCount + "}";
+    }
+    /**
+     * @return  the word of the slot, or null if no game has been started
+     */
+    String getWord(int slot) {
+        return (getFlags(slot) & HAS_WORD) == 0 ? null : words[chunk(slot).getInt(base(slot) + WORD)];
+    }
+    /**
+     * Starts a game with a new word, nothing revealed or guessed
+     * @param slot  the slot
+     * @param word  the word, at most 'DictionaryBuilder.MAX_WORD_LENGTH' letters
+     */
+    void setWord(int slot, String word) {
+        if (word.length() > DictionaryBuilder.MAX_WORD_LENGTH) {
+            throw new IllegalArgumentException("Word longer than " + DictionaryBuilder.MAX_WORD_LENGTH + " letters: " + word);
+        }
+        ByteBuffer chunk = chunk(slot);
+        int base = base(slot);
+        chunk.putInt(base + WORD, intern(word));
+        chunk.putLong(base + REVEALED, 0);
+        chunk.putInt(base + GUESSED, 0);
+        chunk.putInt(base + OPENING, 0);
+        chunk.put(base + LAST_LETTER, (byte) 0);
+        chunk.putShort(base + GAME_GUESSES, (short) 0);     // and IN_ORDER
+        setFlag(slot, ORDERED | COMMON_OPENING, false);
+        setFlag(slot, HAS_WORD, true);
+    }
+    long getRevealed(int slot) {
+        return chunk(slot).getLong(base(slot) + REVEALED);
+    }
+    void setRevealed(int slot, long revealed) {
+        chunk(slot).putLong(base(slot) + REVEALED, revealed);
+    }
+    int getGuessed(int slot) {
+        return chunk(slot).getInt(base(slot) + GUESSED);
+    }
+    void setGuessed(int slot, int guessed) {
+        chunk(slot).putInt(base(slot) + GUESSED, guessed);
+    }
+    int getScore(int slot) {
+        return chunk(slot).getInt(base(slot) + SCORE);
+    }
+    void setScore(int slot, int score) {
+        chunk(slot).putInt(base(slot) + SCORE, score);
+    }
+    long getStartTime(int slot) {
+        return chunk(slot).getLong(base(slot) + START);
+    }
+    void setStartTime(int slot, long startTime) {
+        chunk(slot).putLong(base(slot) + START, startTime);
+    }
+    int getTries(int slot) {
+        return chunk(slot).getShort(base(slot) + TRIES);
+    }
+    void setTries(int slot, int tries) {
+        chunk(slot).putShort(base(slot) + TRIES, (short) tries);
+    }
+    int getGuessLimit(int slot) {
+        return chunk(slot).getShort(base(slot) + GUESS_LIMIT);
+    }
+    void setGuessLimit(int slot, int seconds) {
+        chunk(slot).putShort(base(slot) + GUESS_LIMIT, (short) seconds);
+    }
+    int getRoundLimit(int slot) {
+        return chunk(slot).getShort(base(slot) + ROUND_LIMIT);
+    }
+    void setRoundLimit(int slot, int seconds) {
+        chunk(slot).putShort(base(slot) + ROUND_LIMIT, (short) seconds);
+    }
+    int getLastLetter(int slot) {
+        return chunk(slot).get(base(slot) + LAST_LETTER);
+    }
+    void setLastLetter(int slot, int letter) {
+        chunk(slot).put(base(slot) + LAST_LETTER, (byte) letter);
+    }
+    long getLastGuess(int slot) {
+        return chunk(slot).getLong(base(slot) + LAST_GUESS);
+    }
+    void setLastGuess(int slot, long nanos) {
+        chunk(slot).putLong(base(slot) + LAST_GUESS, nanos);
+    }
+    float getInterval(int slot) {
+        return chunk(slot).getFloat(base(slot) + INTERVAL);
+    }
+    void setInterval(int slot, float millis) {
+        chunk(slot).putFloat(base(slot) + INTERVAL, millis);
+    }
+    float getDeviation(int slot) {
+        return chunk(slot).getFloat(base(slot) + DEVIATION);
+    }
+    void setDeviation(int slot, float millis) {
+        chunk(slot).putFloat(base(slot) + DEVIATION, millis);
+    }
+    int getOpening(int slot) {
+        return chunk(slot).getInt(base(slot) + OPENING);
+    }
+    void setOpening(int slot, int hash) {
+        chunk(slot).putInt(base(slot) + OPENING, hash);
+    }
+    int getSessionGuesses(int slot) {
+        return chunk(slot).getShort(base(slot) + GUESSES) & 0xFFFF;
+    }
+    void setSessionGuesses(int slot, int guesses) {
+        chunk(slot).putShort(base(slot) + GUESSES, (short) Math.min(guesses, 0xFFFF));
+    }
+    int getGameGuesses(int slot) {
+        return chunk(slot).get(base(slot) + GAME_GUESSES) & 0xFF;
+    }
+    void setGameGuesses(int slot, int guesses) {
+        chunk(slot).put(base(slot) + GAME_GUESSES, (byte) Math.min(guesses, 0xFF));
+    }
+    int getInOrder(int slot) {
+        return chunk(slot).get(base(slot) + IN_ORDER) & 0xFF;
+    }
+    void setInOrder(int slot, int inOrder) {
+        chunk(slot).put(base(slot) + IN_ORDER, (byte) inOrder);
+    }
+    /**
+     * @param slot  the slot
+     * @param flag  one of the flag constants
+     * @return      true if the flag is set
+     */
+    boolean isSet(int slot, int flag) {
+        return (getFlags(slot) & flag) != 0;
+    }
+    void setFlag(int slot, int flag, boolean set) {
+        int flags = getFlags(slot);
+        chunk(slot).put(base(slot) + FLAGS, (byte) (set ? flags | flag : flags & ~flag));
+    }
+    private int getFlags(int slot) {
+        return chunk(slot).get(base(slot) + FLAGS);
+    }
+    /**
+     * Gives a word its id, the same id every time the word is interned
+     */
+    private int intern(String word) {
+        Integer id = wordIds.get(word);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = wordIds.get(word);
+            if (id == null) {
+                if (wordCount == words.length) {
+                    words = Arrays.copyOf(words, words.length * 2);
+                }
+                id = wordCount++;
+                String[] table = words;
+                table[id] = word;
+                words = table;          // publishes the word before its id
+                wordIds.put(word, id);
+            }
+            return id;
+        }
+    }
+    private ByteBuffer chunk(int slot) {
+        return chunks[slot >>> CHUNK_BITS];
+    }
+    private static int base(int slot) {
+        return (slot & (CHUNK_SLOTS - 1)) * SLOT_SIZE;
+    }
+}
@@ -0,0 +1,94 @@
+package server.net;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import server.controller.ServerController;
+import common.Constants;
+import common.ServerMessageTypes;
+/**
+ *  Times saving every session to a snapshot when the server is drained, and restoring the
+ * snapshot when it starts again, as done by 'SessionRegistry.save' and 'restore'.
+ * The sessions are played a little first, so most of them are saved in the middle of a game
+ * with guesses to write. Half of them are HTTP sessions. Every round saves all sessions
+ * to a temporary snapshot, restores it and ends the restored sessions again, the best round
+ * is reported, after the first rounds have warmed up the JIT.
+ *
+ * Usage: SnapshotBenchmark [SESSIONS] [ROUNDS]
+ */
+public class SnapshotBenchmark {
+
+    private static final int WARMUP_ROUNDS = 2;
+
+    private final ServerController contr = new ServerController();
+    private final GameClock clock = new GameClock(contr);
+    private final Matchmaker matchmaker = new Matchmaker(contr, clock);
+    private final SessionRegistry registry = new SessionRegistry();
+    private final int sessions;
+
+    private SnapshotBenchmark(int sessions) {
+        this.sessions = sessions;
+        List<String> responses = new ArrayList<>();
+        String[] lines = {ServerMessageTypes.NEWWORD.toString(),
+            ServerMessageTypes.GUESS + Constants.DELIMETER + "e",
+            ServerMessageTypes.GUESS + Constants.DELIMETER + "a"};
+        for (int i = 0; i < sessions; i++) {
+            GameSession session = new GameSession(contr, clock, matchmaker);
+            registry.register(session, i % 2 == 0);
+            for (int j = 0; j < i % 4; j++) {       // a quarter are not playing, the rest have 0-2 guesses
+                session.process(lines[j], responses);
+            }
+            responses.clear();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        SnapshotBenchmark benchmark = new SnapshotBenchmark(sessions);
+        Path snapshot = Files.createTempFile("sessions", ".snapshot");
+        try {
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                benchmark.round(snapshot, new long[3]);
+            }
+            long[] best = {Long.MAX_VALUE, Long.MAX_VALUE, 0};
+            for (int i = 0; i < rounds; i++) {
+                long[] round = new long[3];
+                benchmark.round(snapshot, round);
+                best[0] = Math.min(best[0], round[0]);
+                best[1] = Math.min(best[1], round[1]);
+                best[2] = round[2];
+            }
+            System.out.println("Snapshot of " + sessions + " sessions, best of " + rounds + " rounds:");
+            benchmark.report("save", best[0]);
+            benchmark.report("restore", best[1]);
+            System.out.printf("  %-12s %8.1f MB%n", "snapshot", best[2] / 1e6);
+        } finally {
+            Files.deleteIfExists(snapshot);
+        }
+        System.exit(0);
+    }
+    /**
+     * Saves, restores and ends the restored sessions once
+     * @param result    set to the nanos taken by the save, by the restore and the size of the snapshot
+     */
+    private void round(Path snapshot, long[] result) throws IOException {
+        long start = System.nanoTime();
+        int saved = registry.save(snapshot);
+        result[0] = System.nanoTime() - start;
+        result[2] = Files.size(snapshot);
+        SessionRegistry restored = new SessionRegistry();
+        start = System.nanoTime();
+        int count = restored.restore(snapshot, contr, clock, matchmaker);
+        result[1] = System.nanoTime() - start;
+        if (saved != sessions || count != sessions) {
+            throw new IllegalStateException("Saved " + saved + " and restored " + count + " of " + sessions + " sessions");
+        }
+        restored.expireRestored();
+    }
+    private void report(String name, long nanos) {
+        System.out.printf("  %-12s %8.1f ms %8.2f us per session%n", name, nanos / 1e6, nanos / 1e3 / sessions);
+    }
+}
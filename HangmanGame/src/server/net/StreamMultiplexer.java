@@ -0,0 +1,235 @@
+package server.net;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import server.controller.ServerController;
+import common.Constants;
+import common.ServerMessageTypes;
+/**
+ *  Carries many sessions over one player connection, for gateways fronting many users. Every line
+ * of a session is framed with the number of its stream, chosen by the client, and so is every line
+ * sent back:
+ *  'STREAM##7##GUESS##a' is answered with 'STREAM##7##RESPONSE##Guess succesful! ...'
+ * A stream is opened by its first frame, which is answered with the token of its session
+ * ('STREAM##7##SESSION##token'), and closed by 'STREAM##7##DISCONNECT'. The sessions are played
+ * on the thread of the connection, no thread is started per session.
+ *
+ * Frames are queued per stream and processed round robin, one frame of every stream with frames
+ * queued per round, so a stream sending a burst of frames does not hold up the other streams.
+ * Every stream takes tokens from a bucket of its own instead of the bucket of the connection, and
+ * may have at most 'MAX_QUEUED' frames queued. Frames beyond that are answered with 'Throttle.THROTTLED'.
+ * Only used by the thread of the connection, except for the responses pushed by the game clock.
+ */
+class StreamMultiplexer {
+
+    /**
+     * Sends a line of the given type to the connection, as 'ClientMessenger.send'
+     */
+    interface Output {
+        void send(ServerMessageTypes type, String message, boolean mayWait);
+    }
+
+    private static final String PREFIX = ServerMessageTypes.STREAM + Constants.DELIMETER;
+
+    private final int   MAX_STREAMS     = 100000;       // streams open at once over one connection
+    private final int   MAX_QUEUED      = 32;           // frames queued for one stream before throttling
+    private final int   MAX_BATCH       = 4096;         // frames queued for all streams before processing them
+
+    private final ServerController contr;
+    private final GameClock clock;
+    private final Matchmaker matchmaker;
+    private final Throttle throttle;
+    private final SessionRegistry registry;
+    private final Output output;
+    private final Map<Integer, Stream> streams = new HashMap<>();
+    private final ArrayDeque<Stream> ready = new ArrayDeque<>();    // streams with frames queued, in turn
+    private final List<String> responses = new ArrayList<>();
+    private int queued;
+
+    StreamMultiplexer(ServerController contr, GameClock clock, Matchmaker matchmaker, Throttle throttle,
+            SessionRegistry registry, Output output) {
+        this.contr = contr;
+        this.clock = clock;
+        this.matchmaker = matchmaker;
+        this.throttle = throttle;
+        this.registry = registry;
+        this.output = output;
+    }
+    /**
+     * @param line  a line received from the connection
+     * @return      true if the line is a frame ('STREAM##number##line')
+     */
+    static boolean isFrame(String line) {
+        return line.regionMatches(true, 0, PREFIX, 0, PREFIX.length());
+    }
+    /**
+     * Queues a frame for its stream, opening the stream if it is new. Malformed frames,
+     * frames beyond what the stream may send and streams beyond 'MAX_STREAMS' are answered
+     * right away
+     * @param frame     a line for which 'isFrame' is true
+     */
+    void queue(String frame) {
+        int delimeter = frame.indexOf(Constants.DELIMETER, PREFIX.length());
+        int number;
+        try {
+            number = Integer.parseInt(frame.substring(PREFIX.length(), delimeter < 0 ? frame.length() : delimeter));
+        } catch (NumberFormatException e) {
+            number = -1;
+        }
+        if (number < 0 || delimeter < 0) {
+            output.send(ServerMessageTypes.RESPONSE, "Malformed stream frame, expected 'STREAM##number##line'", true);
+            return;
+        }
+        Stream stream = streams.get(number);
+        if (stream == null) {
+            if (streams.size() == MAX_STREAMS) {
+                send(number, ServerMessageTypes.RESPONSE, "Too many streams, close a stream before opening another", true);
+                return;
+            }
+            stream = open(number);
+        }
+        if (stream.frames.size() == MAX_QUEUED || !throttle.admit(stream.inbound)) {
+            send(number, ServerMessageTypes.RESPONSE, Throttle.THROTTLED, true);
+            return;
+        }
+        if (stream.frames.isEmpty()) {
+            ready.add(stream);
+        }
+        stream.frames.add(frame.substring(delimeter + Constants.DELIMETER.length()));
+        queued++;
+    }
+    /**
+     * @return  true if frames are waiting to be processed
+     */
+    boolean hasQueued() {
+        return queued > 0;
+    }
+    /**
+     * @return  true if so many frames are queued that they should be processed before reading more
+     */
+    boolean isFull() {
+        return queued >= MAX_BATCH;
+    }
+    /**
+     * Processes every queued frame, taking one frame of every stream in turn
+     */
+    void process() {
+        Stream stream;
+        while ((stream = ready.poll()) != null) {
+            process(stream, stream.frames.poll());
+            queued--;
+            if (!stream.frames.isEmpty()) {
+                ready.add(stream);
+            }
+        }
+    }
+    /**
+     * @return  the number of streams open
+     */
+    int size() {
+        return streams.size();
+    }
+    /**
+     * Ends the session of every stream, when the connection is closed
+     */
+    void close() {
+        for (Stream stream : streams.values()) {
+            registry.unregister(stream.session);
+        }
+        streams.clear();
+        ready.clear();
+        queued = 0;
+    }
+    private Stream open(int number) {
+        Stream stream = new Stream(number, new GameSession(contr, clock, matchmaker), throttle.newSessionBucket());
+        streams.put(number, stream);
+        registry.register(stream.session, false);
+        listen(stream);
+        send(number, ServerMessageTypes.SESSION, stream.session.getToken(), true);
+        return stream;
+    }
+    /**
+     * Processes one line of a stream like a line of its own connection, closing the stream when
+     * its player disconnects
+     */
+    private void process(Stream stream, String line) {
+        boolean stay = true;
+        try {
+            GameSession resumed = registry.resumeLine(line);
+            if (resumed != null) {
+                registry.unregister(stream.session);
+                stream.session = resumed;
+                listen(stream);
+                send(stream.number, ServerMessageTypes.SESSION, stream.session.getToken(), true);
+                resumed.resumed(responses);
+            } else {
+                stay = stream.session.process(line, responses);
+            }
+        } catch (IllegalArgumentException e) {
+            responses.add(e.getMessage());
+        }
+        for (String response : responses) {
+            send(stream.number, ServerMessageTypes.RESPONSE, response, true);
+        }
+        responses.clear();
+        sendState(stream, true);
+        if (!stay) {
+            queued -= stream.frames.size();
+            stream.frames.clear();
+            streams.remove(stream.number);
+            registry.unregister(stream.session);
+            send(stream.number, ServerMessageTypes.DISCONNECT, "Stream closed", true);
+        }
+    }
+    private void listen(Stream stream) {
+        GameSession session = stream.session;
+        session.setListener(() -> sendPushed(stream, session));
+    }
+    /**
+     * Sends the responses pushed to the session of a stream by the game clock, called on the clock thread
+     */
+    private void sendPushed(Stream stream, GameSession session) {
+        List<String> pushed = new ArrayList<>();
+        session.takePending(pushed);
+        for (String response : pushed) {
+            send(stream.number, ServerMessageTypes.RESPONSE, response, false);
+        }
+        sendState(stream, false);
+    }
+    /**
+     * Sends the state of the game of a stream if it subscribed to it and it changed since it was last sent
+     */
+    private void sendState(Stream stream, boolean mayWait) {
+        synchronized (stream) {
+            if (stream.session.hasStateUpdates()) {
+                String state = stream.session.getState();
+                if (!state.equals(stream.lastState)) {
+                    stream.lastState = state;
+                    send(stream.number, ServerMessageTypes.STATE, state, mayWait);
+                }
+            }
+        }
+    }
+    private void send(int number, ServerMessageTypes type, String message, boolean mayWait) {
+        output.send(ServerMessageTypes.STREAM, number + Constants.DELIMETER + type + Constants.DELIMETER + message, mayWait);
+    }
+    /**
+     * One session carried by the connection
+     */
+    private static class Stream {
+        private final int number;
+        private final TokenBucket inbound;
+        private final ArrayDeque<String> frames = new ArrayDeque<>();
+        private volatile GameSession session;
+        private String lastState;
+
+        private Stream(int number, GameSession session, TokenBucket inbound) {
+            this.number = number;
+            this.session = session;
+            this.inbound = inbound;
+        }
+    }
+}
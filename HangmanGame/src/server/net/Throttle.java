@@ -0,0 +1,122 @@
+package server.net;
+
+import java.util.concurrent.atomic.LongAdder;
+/**
+ *  Limits the traffic accepted from and queued for players. Every received line takes a token from
+ * the senders own bucket as well as from a bucket shared by all players, and every queued response is
+ * bounded by 'MAX_OUTBOUND_CHARS' per connection. When a player stops reading, the 'OverflowPolicy'
+ * decides what happens to further responses. Every throttling decision is counted.
+ */
+class Throttle {
+    /**
+     * What to do with a response when the receiving players outbound queue is full
+     */
+    enum OverflowPolicy {
+        /**
+         * Discard the response
+         */
+        DROP,
+        /**
+         * Disconnect the player
+         */
+        DISCONNECT,
+        /**
+         * Stop reading from the player until the queue has been drained
+         */
+        PAUSE
+    }
+
+    static final String THROTTLED = "Too many messages, slow down and try again";
+
+    private final double    SESSION_RATE        = 20;           // lines per second accepted from one player
+    private final double    SESSION_BURST       = 40;           // lines one player may send at once
+    private final double    GLOBAL_RATE         = 50000;        // lines per second accepted from all players
+    private final double    GLOBAL_BURST        = 100000;       // lines all players may send at once
+    private final int       MAX_OUTBOUND_CHARS  = 65536;        // characters queued for one player before overflowing
+    private final int       MAX_SHARED_CHARS    = 1 << 24;      // characters queued for a connection carrying many streams
+
+    private final TokenBucket global = new TokenBucket(GLOBAL_RATE, GLOBAL_BURST);
+    private final OverflowPolicy policy;
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder sessionThrottled = new LongAdder();
+    private final LongAdder globalThrottled = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder disconnected = new LongAdder();
+    private final LongAdder paused = new LongAdder();
+
+    Throttle(OverflowPolicy policy) {
+        this.policy = policy;
+    }
+    /**
+     * @return  a new bucket limiting the lines received from a single player
+     */
+    TokenBucket newSessionBucket() {
+        return new TokenBucket(SESSION_RATE, SESSION_BURST);
+    }
+    /**
+     * Decides if a line received from a player should be processed
+     * @param session   the bucket of the player who sent the line
+     * @return          true if the line may be processed, false if it should be rejected
+     */
+    boolean admit(TokenBucket session) {
+        if (!session.tryTake()) {
+            sessionThrottled.increment();
+            return false;
+        }
+        if (!global.tryTake()) {
+            session.giveBack();             // the line was not processed, it should not count against the player
+            globalThrottled.increment();
+            return false;
+        }
+        admitted.increment();
+        return true;
+    }
+    /**
+     * @return  the policy used when a players outbound queue is full
+     */
+    OverflowPolicy policy() {
+        return policy;
+    }
+    /**
+     * @return  the number of characters that may be queued for one player
+     */
+    int maxOutbound() {
+        return MAX_OUTBOUND_CHARS;
+    }
+    /**
+     * @param streams   the number of sessions carried by the connection
+     * @return          the number of characters that may be queued for a connection carrying many sessions
+     */
+    int maxOutbound(int streams) {
+        return (int) Math.min((long) MAX_OUTBOUND_CHARS * Math.max(1, streams), MAX_SHARED_CHARS);
+    }
+    /**
+     * Counts that an outbound queue overflowed, and what was done about it
+     * @param action    the policy that was applied
+     */
+    void overflowed(OverflowPolicy action) {
+        switch (action) {
+            case DROP:
+                dropped.increment();
+                break;
+            case DISCONNECT:
+                disconnected.increment();
+                break;
+            default:
+                paused.increment();
+                break;
+        }
+    }
+    /**
+     * @return  all counters as a JSON object
+     */
+    String toJson() {
+        return "{\"policy\":\"" + policy
+                + "\",\"admitted\":" + admitted.sum()
+                + ",\"sessionThrottled\":" + sessionThrottled.sum()
+                + ",\"globalThrottled\":" + globalThrottled.sum()
+                + ",\"outboundDropped\":" + dropped.sum()
+                + ",\"outboundDisconnected\":" + disconnected.sum()
+                + ",\"readPaused\":" + paused.sum() + "}";
+    }
+}
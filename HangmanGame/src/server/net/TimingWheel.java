@@ -0,0 +1,197 @@
+package server.net;
+
+import java.util.ArrayList;
+import java.util.List;
+import server.log.ServerLog;
+/**
+ *  Hierarchical timing wheel running the deadlines of every game on a single thread.
+ * Deadlines are kept in doubly linked lists, one for every slot of every level, so
+ * scheduling and cancelling a deadline is O(1) no matter how many are pending.
+ * Level 0 has one slot per tick, every higher level has slots 'SLOTS' times wider than
+ * the level below. When the wheel reaches the start of a slot of a higher level, the
+ * deadlines of that slot are cascaded down to the level their remaining time fits in,
+ * until they reach level 0 and expire.
+ *
+ * Expired tasks are run on the wheel thread and must not block.
+ */
+class TimingWheel implements Runnable {
+
+    private static final int    SLOT_BITS   = 6;
+    private static final int    SLOTS       = 1 << SLOT_BITS;   // slots per level
+    private static final int    LEVELS      = 4;                // with 10 ms ticks, deadlines up to 46 hours fit the wheel
+
+    private final long tickMillis;
+    private final long start;
+    private final Timeout[] slots = new Timeout[LEVELS * SLOTS];  // first deadline of every slot
+    private long currentTick;
+    private int pending;
+
+    /**
+     * Creates a wheel, which starts turning once its thread is started
+     * @param tickMillis    resolution of the wheel, deadlines expire up to one tick late
+     */
+    TimingWheel(long tickMillis) {
+        this.tickMillis = tickMillis;
+        this.start = System.nanoTime();
+    }
+    /**
+     * Starts the wheel on a daemon thread
+     */
+    void start() {
+        Thread thread = new Thread(this, "timing-wheel");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    /**
+     * Schedules a task to run once the delay has passed
+     * @param delayMillis   time until the task is run
+     * @param task          the task to run on the wheel thread
+     * @return              the deadline, which can be cancelled
+     */
+    synchronized Timeout schedule(long delayMillis, Runnable task) {
+        long deadline = (elapsedMillis() + delayMillis + tickMillis - 1) / tickMillis;
+        Timeout timeout = new Timeout(task, Math.max(currentTick + 1, deadline));
+        add(timeout);
+        pending++;
+        return timeout;
+    }
+    /**
+     * Cancels a deadline
+     * @param timeout   the deadline to cancel
+     * @return          true if the deadline was pending, false if it already expired or was cancelled
+     */
+    synchronized boolean cancel(Timeout timeout) {
+        if (timeout == null || timeout.slot < 0) {
+            return false;
+        }
+        remove(timeout);
+        pending--;
+        return true;
+    }
+    /**
+     * @return  the number of pending deadlines
+     */
+    synchronized int pending() {
+        return pending;
+    }
+    /**
+     * Turns the wheel one tick at a time, catching up on ticks missed while
+     * the thread was not scheduled, and runs the expired tasks outside the lock
+     */
+    @Override
+    public void run() {
+        List<Runnable> expired = new ArrayList<>();
+        while (true) {
+            try {
+                Thread.sleep(tickMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long now = elapsedMillis() / tickMillis;
+            synchronized (this) {
+                while (currentTick < now) {
+                    tick(expired);
+                }
+            }
+            for (Runnable task : expired) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    ServerLog.error("Error in timer task", e);
+                }
+            }
+            expired.clear();
+        }
+    }
+    /**
+     * Advances the wheel one tick, cascading the higher level slots that start at the new tick
+     * and collecting the tasks of the level 0 slot
+     */
+    private void tick(List<Runnable> expired) {
+        currentTick++;
+        for (int level = 1; level < LEVELS; level++) {
+            if ((currentTick & mask(level - 1)) != 0) {
+                break;
+            }
+            int slot = level * SLOTS + (int) ((currentTick >>> (level * SLOT_BITS)) & (SLOTS - 1));
+            Timeout timeout = slots[slot];
+            slots[slot] = null;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                add(timeout);
+                timeout = next;
+            }
+        }
+        int slot = (int) (currentTick & (SLOTS - 1));
+        Timeout timeout = slots[slot];
+        slots[slot] = null;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            timeout.slot = -1;
+            timeout.prev = null;
+            timeout.next = null;
+            pending--;
+            expired.add(timeout.task);
+            timeout = next;
+        }
+    }
+    /**
+     * Adds a deadline to the slot of the lowest level its remaining time fits in.
+     * Deadlines beyond the last level wait in the last level and are placed again when cascaded.
+     */
+    private void add(Timeout timeout) {
+        long remaining = timeout.deadline - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && remaining > mask(level)) {
+            level++;
+        }
+        long deadline = Math.min(timeout.deadline, currentTick + mask(LEVELS - 1));
+        timeout.slot = level * SLOTS + (int) ((deadline >>> (level * SLOT_BITS)) & (SLOTS - 1));
+        timeout.prev = null;
+        timeout.next = slots[timeout.slot];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        slots[timeout.slot] = timeout;
+    }
+    private void remove(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            slots[timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.slot = -1;
+        timeout.prev = null;
+        timeout.next = null;
+    }
+    /**
+     * @return  the time since the wheel was created, the deadlines are relative to it
+     */
+    private long elapsedMillis() {
+        return (System.nanoTime() - start) / 1000000;
+    }
+    /**
+     * @return  the number of ticks covered by a level, minus one
+     */
+    private static long mask(int level) {
+        return (1L << ((level + 1) * SLOT_BITS)) - 1;
+    }
+    /**
+     * A pending deadline, linked into the slot it waits in
+     */
+    static class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private Timeout prev;
+        private Timeout next;
+        private int slot = -1;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+    }
+}
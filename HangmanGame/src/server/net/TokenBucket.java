@@ -0,0 +1,40 @@
+package server.net;
+/**
+ *  Token bucket used to limit how often something may happen. The bucket holds up to
+ * 'capacity' tokens and is refilled with 'ratePerSecond' tokens every second, each
+ * permitted action takes one token.
+ */
+class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long lastRefill;
+
+    TokenBucket(double ratePerSecond, double capacity) {
+        this.capacity = capacity;
+        this.tokensPerNano = ratePerSecond / 1e9;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+    /**
+     * Takes a token from the bucket if one is available
+     * @return  true if a token was taken, false if the action should be throttled
+     */
+    synchronized boolean tryTake() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+    /**
+     * Returns a token taken by 'tryTake' when the action was not permitted after all
+     */
+    synchronized void giveBack() {
+        tokens = Math.min(capacity, tokens + 1);
+    }
+}
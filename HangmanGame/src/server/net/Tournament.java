@@ -0,0 +1,89 @@
+package server.net;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import server.model.WordTemplate;
+/**
+ *  One scheduled tournament round. Every player who joined before the start plays the
+ * same word under the same time limits, and is ranked by how fast the word was completed.
+ */
+class Tournament {
+
+    private final int number;
+    private final Set<GameSession> players = new LinkedHashSet<>();
+    private final Map<GameSession, Integer> ranks = new HashMap<>();
+    private boolean started;
+
+    Tournament(int number) {
+        this.number = number;
+    }
+    /**
+     * @return  the number of the tournament, counting from 1
+     */
+    int getNumber() {
+        return number;
+    }
+    /**
+     * Adds a player to the tournament
+     * @param session   the session of the player
+     * @return          false if the tournament has already started
+     */
+    synchronized boolean join(GameSession session) {
+        if (started) {
+            return false;
+        }
+        players.add(session);
+        return true;
+    }
+    /**
+     * Starts a tournament game for every player at once
+     * @param word          the word every player guesses
+     * @param roundMillis   time limit of the round
+     * @param guessMillis   time limit of every guess
+     * @return              the number of players
+     */
+    int start(WordTemplate word, long roundMillis, long guessMillis) {
+        List<GameSession> starting;
+        synchronized (this) {
+            started = true;
+            starting = new ArrayList<>(players);
+        }
+        for (GameSession session : starting) {
+            session.startTournament(this, word, roundMillis, guessMillis);
+        }
+        return starting.size();
+    }
+    /**
+     * Called by a session when its tournament game is completed
+     * @param session   the session of the player
+     */
+    synchronized void completed(GameSession session) {
+        if (!ranks.containsKey(session)) {
+            ranks.put(session, ranks.size() + 1);
+        }
+    }
+    /**
+     * Ends the tournament, telling every player their rank
+     */
+    void finish() {
+        Map<GameSession, Integer> ranked;
+        List<GameSession> everyone;
+        synchronized (this) {
+            ranked = new HashMap<>(ranks);
+            everyone = new ArrayList<>(players);
+        }
+        for (GameSession session : everyone) {
+            Integer rank = ranked.get(session);
+            if (rank != null) {
+                session.push("Tournament " + number + " is over, you finished #" + rank + " of " + everyone.size());
+            } else {
+                session.push("Tournament " + number + " is over, you did not complete the word. "
+                        + ranked.size() + " of " + everyone.size() + " players did");
+            }
+        }
+    }
+}
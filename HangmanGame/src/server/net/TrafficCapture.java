@@ -0,0 +1,186 @@
+package server.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import server.log.ServerLog;
+/**
+ *  Records the lines sent to and from socket players, so the traffic can be replayed
+ * against a local server by 'TrafficReplay'. Player threads only queue the lines, a
+ * single writer thread writes them to the capture file in batches. If the queue is full
+ * the line is dropped and counted rather than blocking the player.
+ * Enabled by starting the server with -Dhangman.capture=FILE.
+ *
+ * The capture is written as:
+ *  int magic, long start (epoch millis), then for every record
+ *  byte kind, int connection, long time since the start in microseconds, followed by
+ *  INBOUND, OUTBOUND:  short length + UTF-8 line
+ */
+class TrafficCapture implements Runnable {
+
+    static final int    MAGIC       = 0x48544331;           // 'HTC1'
+    static final byte   OPEN        = 0;
+    static final byte   INBOUND     = 1;
+    static final byte   OUTBOUND    = 2;
+    static final byte   CLOSE       = 3;
+
+    private final int   QUEUE_SIZE  = 65536;        // lines waiting to be written before dropping
+    private final int   BATCH_SIZE  = 4096;         // max lines written per batch
+    private final int   BUFFER_SIZE = 1 << 16;      // bytes buffered before writing to the file
+    private final long  MAX_DELAY   = 200;          // max time a line waits in the queue, in millis
+
+    private final ArrayBlockingQueue<Record> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final AtomicInteger connections = new AtomicInteger();
+    private final LongAdder dropped = new LongAdder();
+    private final long start = System.nanoTime();
+    private final Path path;
+    private FileChannel file;
+
+    /**
+     * Creates the capture file and starts the writer thread
+     * @param path  the capture file, replaced if it exists
+     * @throws IOException  if the file can not be created
+     */
+    TrafficCapture(Path path) throws IOException {
+        this.path = path;
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        buffer.putInt(MAGIC);
+        buffer.putLong(System.currentTimeMillis());
+        Thread writer = new Thread(this, "traffic-capture");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush));
+    }
+    /**
+     * Records a new connection
+     * @return  the number of the connection, used for its lines
+     */
+    int open() {
+        int connection = connections.incrementAndGet();
+        append(OPEN, connection, null);
+        return connection;
+    }
+    /**
+     * Records a line received from a player
+     */
+    void inbound(int connection, String line) {
+        append(INBOUND, connection, line);
+    }
+    /**
+     * Records a line queued for a player
+     */
+    void outbound(int connection, String line) {
+        append(OUTBOUND, connection, line);
+    }
+    /**
+     * Records the end of a connection
+     */
+    void close(int connection) {
+        append(CLOSE, connection, null);
+    }
+    private void append(byte kind, int connection, String line) {
+        if (!queue.offer(new Record(kind, connection, (System.nanoTime() - start) / 1000, line))) {
+            dropped.increment();
+        }
+    }
+    /**
+     * The writer thread spends its lifetime here, writing lines in batches as they are queued
+     */
+    @Override
+    public void run() {
+        List<Record> batch = new ArrayList<>(BATCH_SIZE);
+        while (true) {
+            try {
+                Record first = queue.poll(MAX_DELAY, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                write(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+    /**
+     * Writes everything still in the queue, used when the server shuts down
+     */
+    private void flush() {
+        List<Record> batch = new ArrayList<>();
+        queue.drainTo(batch);
+        write(batch);
+        if (dropped.sum() > 0) {
+            ServerLog.warn("Traffic capture dropped lines", path + ": " + dropped.sum());
+            ServerLog.flush();      // the log may have been flushed for the shutdown already
+        }
+    }
+    private synchronized void write(List<Record> batch) {
+        if (file == null) {
+            return;
+        }
+        for (Record record : batch) {
+            if (file == null) {
+                return;                 // a write failed, the rest of the batch is dropped
+            }
+            byte[] line = record.line == null ? null : record.line.getBytes(StandardCharsets.UTF_8);
+            if (buffer.remaining() < 1 + 4 + 8 + 2 + (line == null ? 0 : line.length)) {
+                writeBuffer();
+            }
+            buffer.put(record.kind);
+            buffer.putInt(record.connection);
+            buffer.putLong(record.micros);
+            if (line != null) {
+                int length = Math.min(line.length, Math.min(0xFFFF, BUFFER_SIZE - 15));
+                buffer.putShort((short) length);
+                buffer.put(line, 0, length);
+            }
+        }
+        writeBuffer();
+    }
+    private void writeBuffer() {
+        buffer.flip();
+        if (file != null) {
+            try {
+                while (buffer.hasRemaining()) {
+                    file.write(buffer);
+                }
+            } catch (IOException e) {
+                ServerLog.error("Error when writing traffic capture, capturing stopped", e);
+                file = null;
+            }
+        }
+        buffer.clear();
+    }
+    /**
+     * One captured line, or the opening or closing of a connection
+     */
+    private static class Record {
+        private final byte kind;
+        private final int connection;
+        private final long micros;
+        private final String line;
+
+        private Record(byte kind, int connection, long micros, String line) {
+            this.kind = kind;
+            this.connection = connection;
+            this.micros = micros;
+            this.line = line;
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package server.net;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.LockSupport;
+import common.Constants;
+import common.ServerMessageTypes;
+import common.UnixSockets;
+/**
+ *  Replays traffic captured by 'TrafficCapture' against a running server. Every captured
+ * connection is opened again and sends the same lines, at the captured times divided by
+ * the speed, or as fast as possible. The responses are compared with the captured responses
+ * and the time from sending a line until its last response arrived is reported per command.
+ *
+ * Responses of a line are the responses captured after it, until the next line of the
+ * connection. Words are random, so responses are compared with the words, hidden words, numbers
+ * and whether a guess was correct masked. Games can still end earlier or later than captured.
+ *
+ * Usage: TrafficReplay CAPTURE [HOST] [PORT] [SPEED]
+ *  HOST may be 'unix:FILE' to replay over the unix domain socket of the server, PORT is then not used
+ *  SPEED is a factor (1 replays at the captured pace, 10 ten times faster) or 'max'
+ */
+public class TrafficReplay {
+
+    private static final long   DRAIN_TIMEOUT   = 10000;    // time to wait for the last responses, in millis
+    private static final int    EXAMPLES        = 10;       // differing responses printed
+
+    private final String host;
+    private final int port;
+    private final double speed;                             // 0 to send as fast as possible
+    private final Map<Integer, Conversation> conversations = new HashMap<>();
+    private final List<Step> steps = new ArrayList<>();
+    private final List<String> examples = new ArrayList<>();
+    private long maxLag;
+    private int refused;
+
+    private TrafficReplay(String host, int port, double speed) {
+        this.host = host;
+        this.port = port;
+        this.speed = speed;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.out.println("Usage: TrafficReplay CAPTURE [HOST] [PORT] [SPEED|max]");
+            System.exit(1);
+        }
+        String host = args.length > 1 ? args[1] : "localhost";
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 8080;
+        double speed = 1;
+        if (args.length > 3) {
+            speed = args[3].equalsIgnoreCase("max") ? 0 : Double.parseDouble(args[3]);
+        }
+        TrafficReplay replay = new TrafficReplay(host, port, speed);
+        replay.read(args[0]);
+        replay.replay();
+        replay.report();
+        System.exit(0);
+    }
+    /**
+     * Reads a capture, grouping the lines by connection
+     * @param file  the capture file
+     * @throws IOException  if the file is not a capture
+     */
+    private void read(String file) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != TrafficCapture.MAGIC) {
+                throw new IOException("Not a traffic capture: " + file);
+            }
+            in.getLong();
+            while (in.hasRemaining()) {
+                byte kind = in.get();
+                int connection = in.getInt();
+                long micros = in.getLong();
+                String line = null;
+                if (kind == TrafficCapture.INBOUND || kind == TrafficCapture.OUTBOUND) {
+                    byte[] bytes = new byte[in.getShort() & 0xFFFF];
+                    in.get(bytes);
+                    line = new String(bytes, StandardCharsets.UTF_8);
+                }
+                Conversation conversation = conversations.get(connection);
+                if (conversation == null) {
+                    if (kind != TrafficCapture.OPEN) {
+                        continue;               // opened before the capture started
+                    }
+                    conversation = new Conversation(connection);
+                    conversations.put(connection, conversation);
+                }
+                switch (kind) {
+                    case TrafficCapture.OPEN:
+                        steps.add(new Step(micros, conversation, conversation.commands.get(0)));
+                        break;
+                    case TrafficCapture.INBOUND:
+                        Command command = new Command(line);
+                        conversation.commands.add(command);
+                        steps.add(new Step(micros, conversation, command));
+                        break;
+                    case TrafficCapture.OUTBOUND:
+                        conversation.last().expected.add(line);
+                        break;
+                    default:
+                        steps.add(new Step(micros, conversation, null));
+                        break;
+                }
+            }
+        }
+    }
+    /**
+     * Sends every captured line at its time, while a thread per connection reads the responses
+     */
+    private void replay() throws InterruptedException {
+        System.out.println("Replaying " + conversations.size() + " connections with " + steps.size() + " steps"
+                + (speed > 0 ? " at " + speed + "x speed" : " at max speed"));
+        long start = System.nanoTime();
+        for (Step step : steps) {
+            if (speed > 0) {
+                long due = start + (long) (step.micros * 1000 / speed);
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                maxLag = Math.max(maxLag, System.nanoTime() - due);
+            }
+            step.run();
+        }
+        long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT;
+        for (Conversation conversation : conversations.values()) {
+            conversation.finish(deadline);
+        }
+    }
+    /**
+     * Prints how the responses differ from the captured responses and the latency of every command
+     */
+    private void report() {
+        int compared = 0;
+        int differing = 0;
+        int missing = 0;
+        int unexpected = 0;
+        Map<String, Latencies> latencies = new TreeMap<>();
+        Latencies all = new Latencies();
+        for (Conversation conversation : conversations.values()) {
+            unexpected += conversation.unexpected;
+            for (Command command : conversation.commands) {
+                compared += command.received;
+                differing += command.differing;
+                missing += command.expected.size() - command.received;
+                if (command.latency >= 0) {
+                    String type = command.type();
+                    if (!latencies.containsKey(type)) {
+                        latencies.put(type, new Latencies());
+                    }
+                    latencies.get(type).add(command.latency);
+                    all.add(command.latency);
+                }
+            }
+        }
+        System.out.println("Responses: " + compared + " compared, " + differing + " differing, "
+                + missing + " missing, " + unexpected + " unexpected, " + refused + " connections refused");
+        for (String example : examples) {
+            System.out.println("  " + example);
+        }
+        if (speed > 0) {
+            System.out.printf("Max send lag behind the capture: %.2f ms%n", maxLag / 1e6);
+        }
+        System.out.println("Latency from sending a line until its last response, in ms:");
+        System.out.printf("  %-12s %8s %8s %8s %8s %8s%n", "command", "count", "p50", "p90", "p99", "max");
+        for (Map.Entry<String, Latencies> entry : latencies.entrySet()) {
+            entry.getValue().print(entry.getKey());
+        }
+        all.print("all");
+    }
+    /**
+     * Masks what differs between two games with different words: words, hidden words and numbers,
+     * as well as the resume token of the session
+     * @param line  a line sent by the server
+     * @return      the line with the random parts masked
+     */
+    static String normalize(String line) {
+        if (line.startsWith(ServerMessageTypes.SESSION + Constants.DELIMETER)) {
+            return ServerMessageTypes.SESSION + Constants.DELIMETER + "*";
+        }
+        return line.replaceAll("[0-9]+", "#")
+                   .replaceAll("(un)?succesful", "*succesful")
+                   .replaceAll("\\p{L}*-[\\p{L}-]*", "*")
+                   .replaceAll("(word|was): \\p{L}+", "$1: *");
+    }
+    private synchronized void difference(Conversation conversation, Command command, String expected, String received) {
+        if (examples.size() < EXAMPLES) {
+            examples.add("connection " + conversation.number + ", after '" + command.line + "': expected '"
+                    + expected + "', received '" + received + "'");
+        }
+    }
+    /**
+     * A captured step: opening a connection, sending a line or closing the connection
+     */
+    private static class Step {
+        private final long micros;
+        private final Conversation conversation;
+        private final Command command;      // null to close the connection
+
+        private Step(long micros, Conversation conversation, Command command) {
+            this.micros = micros;
+            this.conversation = conversation;
+            this.command = command;
+        }
+        private void run() {
+            if (command == null) {
+                conversation.close();
+            } else if (command.line == null) {
+                conversation.open();
+            } else {
+                conversation.send(command);
+            }
+        }
+    }
+    /**
+     * A captured line and the responses captured after it
+     */
+    private static class Command {
+        private final String line;                          // null for the responses sent on connecting
+        private final List<String> expected = new ArrayList<>();
+        private long sent;
+        private int received;
+        private int differing;
+        private long latency = -1;
+
+        private Command(String line) {
+            this.line = line;
+        }
+        private String type() {
+            if (line == null) {
+                return "(connect)";
+            }
+            int delimeter = line.indexOf(Constants.DELIMETER);
+            return (delimeter < 0 ? line : line.substring(0, delimeter)).toUpperCase();
+        }
+    }
+    /**
+     * One captured connection, replayed over its own socket
+     */
+    private class Conversation implements Runnable {
+        private final int number;
+        private final List<Command> commands = new ArrayList<>();
+        private Socket socket;
+        private SocketChannel channel;      // instead of the socket, when replaying over a unix domain socket
+        private InputStream in;
+        private OutputStream out;
+        private Thread reader;
+        private int next;                   // first command still waiting for responses
+        private int sent;                   // number of commands sent
+        private int unexpected;
+
+        private Conversation(int number) {
+            this.number = number;
+            commands.add(new Command(null));
+        }
+        private Command last() {
+            return commands.get(commands.size() - 1);
+        }
+        private void open() {
+            try {
+                if (host.startsWith(UnixSockets.PREFIX)) {
+                    channel = UnixSockets.connect(Paths.get(host.substring(UnixSockets.PREFIX.length())));
+                    in = UnixSockets.in(channel);
+                    out = UnixSockets.out(channel);
+                } else {
+                    socket = new Socket(host, port);
+                    in = socket.getInputStream();
+                    out = socket.getOutputStream();
+                }
+            } catch (IOException e) {
+                synchronized (TrafficReplay.this) {
+                    refused++;
+                }
+                return;
+            }
+            sent(commands.get(0));
+            reader = new Thread(this, "replay-" + number);
+            reader.setDaemon(true);
+            reader.start();
+        }
+        private void send(Command command) {
+            if (out == null) {
+                return;
+            }
+            sent(command);
+            try {
+                out.write((command.line + "\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            } catch (IOException e) {
+                out = null;
+            }
+        }
+        private synchronized void sent(Command command) {
+            command.sent = System.nanoTime();
+            sent++;
+        }
+        private void close() {
+            try {
+                if (socket != null) {
+                    socket.shutdownOutput();
+                } else if (channel != null) {
+                    channel.shutdownOutput();
+                }
+            } catch (IOException e) {
+                // the server already closed the connection
+            }
+        }
+        /**
+         * Waits for the reader until the deadline, then closes the socket
+         */
+        private void finish(long deadline) throws InterruptedException {
+            if (reader != null) {
+                reader.join(Math.max(1, deadline - System.currentTimeMillis()));
+            }
+            try {
+                if (socket != null) {
+                    socket.close();
+                } else if (channel != null) {
+                    channel.close();
+                }
+            } catch (IOException e) {
+                // closing anyway
+            }
+            if (reader != null) {
+                reader.join();
+            }
+        }
+        /**
+         * Reads the responses of the server, matching each to the oldest sent command still
+         * missing responses
+         */
+        @Override
+        public void run() {
+            try {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    received(line, System.nanoTime());
+                }
+            } catch (IOException e) {
+                // the socket was closed by 'finish'
+            }
+        }
+        private synchronized void received(String line, long now) {
+            while (next < sent && commands.get(next).received == commands.get(next).expected.size()) {
+                next++;
+            }
+            if (next == sent) {
+                unexpected++;
+                return;
+            }
+            Command command = commands.get(next);
+            String expected = command.expected.get(command.received++);
+            if (!normalize(expected).equals(normalize(line))) {
+                command.differing++;
+                difference(this, command, expected, line);
+            }
+            if (command.received == command.expected.size()) {
+                command.latency = now - command.sent;
+            }
+        }
+    }
+    /**
+     * The latencies of one kind of command
+     */
+    private static class Latencies {
+        private long[] nanos = new long[64];
+        private int count;
+
+        private void add(long latency) {
+            if (count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, count * 2);
+            }
+            nanos[count++] = latency;
+        }
+        private void print(String name) {
+            if (count == 0) {
+                return;
+            }
+            long[] sorted = Arrays.copyOf(nanos, count);
+            Arrays.sort(sorted);
+            System.out.printf("  %-12s %8d %8.2f %8.2f %8.2f %8.2f%n", name, count, percentile(sorted, 50),
+                    percentile(sorted, 90), percentile(sorted, 99), sorted[count - 1] / 1e6);
+        }
+        private static double percentile(long[] sorted, double percent) {
+            int index = (int) Math.ceil(percent / 100 * sorted.length) - 1;
+            return sorted[Math.max(0, index)] / 1e6;
+        }
+    }
+}